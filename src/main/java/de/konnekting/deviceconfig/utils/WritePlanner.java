@@ -0,0 +1,188 @@
+/*
+ * Copyright (C) 2020 Alexander Christian <alex(at)root1.de>. All rights reserved.
+ *
+ * This file is part of KONNEKTING DeviceConfig.
+ *
+ *   KONNEKTING DeviceConfig is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   KONNEKTING DeviceConfig is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with KONNEKTING DeviceConfig.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.konnekting.deviceconfig.utils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Plans memory writes for changed bytes. Each write message carries a limited
+ * number of bytes, so instead of one write per run of differing bytes (see
+ * {@link ByteArrayDiff}), unchanged bytes in between are rewritten if this
+ * saves messages. Writes can be kept within page boundaries.
+ *
+ * @author achristian
+ */
+public class WritePlanner {
+
+    /**
+     * Result of planning: the data blocks to write, each fitting into one
+     * write message.
+     */
+    public static class WritePlan {
+
+        private final List<ByteArrayDiff.DataBlock> blocks;
+
+        public WritePlan(List<ByteArrayDiff.DataBlock> blocks) {
+            this.blocks = Collections.unmodifiableList(blocks);
+        }
+
+        /**
+         * @return blocks to write, index is relative to start of data
+         */
+        public List<ByteArrayDiff.DataBlock> getBlocks() {
+            return blocks;
+        }
+
+        /**
+         * @return number of write messages required
+         */
+        public int getTelegramCount() {
+            return blocks.size();
+        }
+
+        /**
+         * @return number of bytes written, including rewritten unchanged bytes
+         */
+        public int getByteCount() {
+            int count = 0;
+            for (ByteArrayDiff.DataBlock block : blocks) {
+                count += block.getData().length;
+            }
+            return count;
+        }
+
+        @Override
+        public String toString() {
+            return "WritePlan{" + "telegrams=" + getTelegramCount() + ", bytes=" + getByteCount() + '}';
+        }
+
+    }
+
+    /**
+     * Plan the writes as it is done without planning: each differing block on
+     * its own, split into chunks of max. size
+     *
+     * @param oldData current data
+     * @param newData data to write, same size as oldData
+     * @param maxChunk max. number of bytes per write message
+     * @return plan
+     */
+    public static WritePlan naive(byte[] oldData, byte[] newData, int maxChunk) {
+        List<ByteArrayDiff.DataBlock> result = new ArrayList<>();
+        for (ByteArrayDiff.Block block : ByteArrayDiff.getDiff(oldData, newData)) {
+            for (int i = 0; i < block.getLength(); i += maxChunk) {
+                int length = Math.min(maxChunk, block.getLength() - i);
+                result.add(dataBlock(newData, block.getIndex() + i, length));
+            }
+        }
+        return new WritePlan(result);
+    }
+
+    /**
+     * Plan writes with the minimal number of write messages
+     *
+     * @param oldData current data
+     * @param newData data to write, same size as oldData
+     * @param maxChunk max. number of bytes per write message
+     * @return plan
+     */
+    public static WritePlan plan(byte[] oldData, byte[] newData, int maxChunk) {
+        return plan(oldData, newData, maxChunk, 0, 0);
+    }
+
+    /**
+     * Plan writes with the minimal number of write messages, none of them
+     * crossing a page boundary.
+     * <p>
+     * Starting at the first byte not covered yet, each write takes as many
+     * bytes as fit into one message (or up to the page end) and is then cut
+     * back to its last differing byte. Starting as late as possible never
+     * needs more messages than any other cover, so the result is minimal.
+     *
+     * @param oldData current data
+     * @param newData data to write, same size as oldData
+     * @param maxChunk max. number of bytes per write message
+     * @param baseAddress memory address of first byte, used for page alignment
+     * @param pageSize page size in bytes, 0 for no alignment
+     * @return plan
+     */
+    public static WritePlan plan(byte[] oldData, byte[] newData, int maxChunk, int baseAddress, int pageSize) {
+        if (oldData == null || newData == null) {
+            throw new IllegalArgumentException("You must not provide null arguments.");
+        }
+        if (oldData.length != newData.length) {
+            throw new IllegalArgumentException("both arrays must have same size. oldData=" + oldData.length + " newData=" + newData.length);
+        }
+        boolean[] dirty = new boolean[newData.length];
+        for (int i = 0; i < newData.length; i++) {
+            dirty[i] = oldData[i] != newData[i];
+        }
+        return plan(newData, dirty, maxChunk, baseAddress, pageSize);
+    }
+
+    /**
+     * Plan writes of the marked bytes with the minimal number of write
+     * messages, none of them crossing a page boundary.
+     *
+     * @param data data to write
+     * @param dirty marks the bytes that have to be written, same size as data
+     * @param maxChunk max. number of bytes per write message
+     * @param baseAddress memory address of first byte, used for page alignment
+     * @param pageSize page size in bytes, 0 for no alignment
+     * @return plan
+     * @see #plan(byte[], byte[], int, int, int)
+     */
+    public static WritePlan plan(byte[] data, boolean[] dirty, int maxChunk, int baseAddress, int pageSize) {
+        if (data.length != dirty.length) {
+            throw new IllegalArgumentException("both arrays must have same size. data=" + data.length + " dirty=" + dirty.length);
+        }
+        if (maxChunk < 1 || pageSize < 0) {
+            throw new IllegalArgumentException("invalid chunk or page size: maxChunk=" + maxChunk + " pageSize=" + pageSize);
+        }
+        List<ByteArrayDiff.DataBlock> result = new ArrayList<>();
+        int i = 0;
+        while (i < data.length) {
+            if (!dirty[i]) {
+                i++;
+                continue;
+            }
+            int end = Math.min(i + maxChunk, data.length);
+            if (pageSize > 0) {
+                int pageEnd = ((baseAddress + i) / pageSize + 1) * pageSize - baseAddress;
+                end = Math.min(end, pageEnd);
+            }
+            int last = end - 1;
+            while (!dirty[last]) {
+                last--;
+            }
+            result.add(dataBlock(data, i, last - i + 1));
+            i = end;
+        }
+        return new WritePlan(result);
+    }
+
+    private static ByteArrayDiff.DataBlock dataBlock(byte[] data, int index, int length) {
+        byte[] d = new byte[length];
+        System.arraycopy(data, index, d, 0, length);
+        return new ByteArrayDiff.DataBlock(index, d);
+    }
+
+}
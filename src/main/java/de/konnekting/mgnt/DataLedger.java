@@ -0,0 +1,169 @@
+/*
+ * Copyright (C) 2020 Alexander Christian <alex(at)root1.de>. All rights reserved.
+ *
+ * This file is part of KONNEKTING DeviceConfig.
+ *
+ *   KONNEKTING DeviceConfig is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   KONNEKTING DeviceConfig is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with KONNEKTING DeviceConfig.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.konnekting.mgnt;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.zip.CRC32;
+
+/**
+ * Ledger of the data successfully sent to one device via
+ * {@link DeviceManagement#sendData(File, byte, byte)}, per data type and data
+ * id. Lets sending the same content again be skipped.
+ * <p>
+ * The ledger only knows what was sent from this host. An entry is removed
+ * before each transfer and only written again after the device acknowledged
+ * the final CRC, so an interrupted transfer never looks complete.
+ *
+ * @author achristian
+ */
+class DataLedger extends PropertiesStore {
+
+    /**
+     * Size and checksums of data
+     */
+    static class Entry {
+
+        final long size;
+        final long crc;
+        final String sha256;
+
+        Entry(long size, long crc, String sha256) {
+            this.size = size;
+            this.crc = crc;
+            this.sha256 = sha256;
+        }
+
+        /**
+         * Read file once and calculate its checksums
+         *
+         * @param f file
+         * @return entry of file
+         * @throws IOException if file cannot be read
+         */
+        static Entry of(File f) throws IOException {
+            CRC32 crc32 = new CRC32();
+            MessageDigest sha256;
+            try {
+                sha256 = MessageDigest.getInstance("SHA-256");
+            } catch (NoSuchAlgorithmException ex) {
+                // every Java platform has to support SHA-256
+                throw new IllegalStateException(ex);
+            }
+            long size = 0;
+            try (InputStream in = new BufferedInputStream(new FileInputStream(f))) {
+                byte[] buffer = new byte[4096];
+                int n;
+                while ((n = in.read(buffer)) != -1) {
+                    crc32.update(buffer, 0, n);
+                    sha256.update(buffer, 0, n);
+                    size += n;
+                }
+            }
+            StringBuilder hex = new StringBuilder();
+            for (byte b : sha256.digest()) {
+                hex.append(String.format("%02x", b));
+            }
+            return new Entry(size, crc32.getValue(), hex.toString());
+        }
+
+        boolean sameAs(Entry other) {
+            return other != null && size == other.size && crc == other.crc && sha256.equals(other.sha256);
+        }
+
+        @Override
+        public String toString() {
+            return "Entry{" + "size=" + size + ", crc=" + crc + ", sha256=" + sha256 + '}';
+        }
+
+    }
+
+    private DataLedger(File file) {
+        super(file, "KONNEKTING data ledger");
+    }
+
+    /**
+     * Load ledger of device, or create an empty one
+     *
+     * @param directory directory of ledgers
+     * @param individualAddress device
+     * @return ledger
+     * @throws IOException if existing ledger cannot be read
+     */
+    static DataLedger open(File directory, String individualAddress) throws IOException {
+        DataLedger ledger = new DataLedger(new File(directory, individualAddress.replace('.', '_') + ".ledger"));
+        ledger.load();
+        return ledger;
+    }
+
+    /**
+     * @param dataType data type
+     * @param dataId data id
+     * @return entry of data last sent, or null if none
+     */
+    Entry get(byte dataType, byte dataId) {
+        String size = properties.getProperty(key(dataType, dataId, "size"));
+        if (size == null) {
+            return null;
+        }
+        return new Entry(Long.parseLong(size),
+                Long.parseLong(properties.getProperty(key(dataType, dataId, "crc"))),
+                properties.getProperty(key(dataType, dataId, "sha256")));
+    }
+
+    /**
+     * @param dataType data type
+     * @param dataId data id
+     * @return time the data was sent, as of {@link System#currentTimeMillis()},
+     * or 0 if none
+     */
+    long getTimestamp(byte dataType, byte dataId) {
+        return Long.parseLong(properties.getProperty(key(dataType, dataId, "timestamp"), "0"));
+    }
+
+    /**
+     * Record data as completely sent
+     *
+     * @param dataType data type
+     * @param dataId data id
+     * @param entry data
+     */
+    void put(byte dataType, byte dataId, Entry entry) {
+        properties.setProperty(key(dataType, dataId, "size"), Long.toString(entry.size));
+        properties.setProperty(key(dataType, dataId, "crc"), Long.toString(entry.crc));
+        properties.setProperty(key(dataType, dataId, "sha256"), entry.sha256);
+        properties.setProperty(key(dataType, dataId, "timestamp"), Long.toString(System.currentTimeMillis()));
+    }
+
+    void remove(byte dataType, byte dataId) {
+        for (String name : new String[]{"size", "crc", "sha256", "timestamp"}) {
+            properties.remove(key(dataType, dataId, name));
+        }
+    }
+
+    private static String key(byte dataType, byte dataId, String name) {
+        return String.format("data.%02x.%02x.%s", dataType, dataId, name);
+    }
+
+}
@@ -0,0 +1,108 @@
+/*
+ * Copyright (C) 2020 Alexander Christian <alex(at)root1.de>. All rights reserved.
+ *
+ * This file is part of KONNEKTING DeviceConfig.
+ *
+ *   KONNEKTING DeviceConfig is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   KONNEKTING DeviceConfig is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with KONNEKTING DeviceConfig.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.konnekting.mgnt;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.zip.CRC32;
+
+/**
+ * Checkpoint of a data transfer to one device, see
+ * {@link DeviceManagement#sendData(File, byte, byte)}. Records the size of
+ * the data, how many bytes the device has acknowledged and the CRC32 of these
+ * bytes. It is saved when a transfer attempt starts and ends and deleted when
+ * the transfer is finished.
+ * <p>
+ * A device that supports it continues an interrupted transfer of data of the
+ * same size at the acknowledged offset, if the CRC32 shows that the data
+ * starts with the same bytes.
+ *
+ * @author achristian
+ */
+class DataTransferCheckpoint extends PropertiesStore {
+
+    private DataTransferCheckpoint(File file) {
+        super(file, "KONNEKTING data transfer checkpoint");
+    }
+
+    /**
+     * Load checkpoint of a transfer, or create an empty one
+     *
+     * @param directory directory of checkpoints
+     * @param individualAddress device
+     * @param dataType data type of transfer
+     * @param dataId data id of transfer
+     * @return checkpoint
+     * @throws IOException if existing checkpoint cannot be read
+     */
+    static DataTransferCheckpoint open(File directory, String individualAddress, byte dataType, byte dataId) throws IOException {
+        String name = String.format("%s_%02x_%02x.transfer", individualAddress.replace('.', '_'), dataType, dataId);
+        DataTransferCheckpoint checkpoint = new DataTransferCheckpoint(new File(directory, name));
+        checkpoint.load();
+        return checkpoint;
+    }
+
+    /**
+     * Start recording a transfer from byte 0. Drops the previous record.
+     *
+     * @param length size of data
+     */
+    void begin(long length) {
+        properties.clear();
+        properties.setProperty("length", Long.toString(length));
+        acknowledged(0, new CRC32().getValue());
+    }
+
+    /**
+     * @param length size of data
+     * @param crc CRC32 of the first {@link #getOffset()} bytes of data
+     * @return true, if this checkpoint records a transfer of data of this
+     * size, which starts with the acknowledged bytes
+     */
+    boolean matches(long length, long crc) {
+        return Long.toString(length).equals(properties.getProperty("length"))
+                && Long.toString(crc).equals(properties.getProperty("crc"));
+    }
+
+    /**
+     * Record acknowledged part of the data
+     *
+     * @param offset number of bytes acknowledged by the device
+     * @param crc CRC32 of these bytes
+     */
+    void acknowledged(long offset, long crc) {
+        properties.setProperty("offset", Long.toString(offset));
+        properties.setProperty("crc", Long.toString(crc));
+    }
+
+    /**
+     * @return size of data, or -1 if no transfer is recorded
+     */
+    long getLength() {
+        return Long.parseLong(properties.getProperty("length", "-1"));
+    }
+
+    /**
+     * @return number of bytes acknowledged by the device
+     */
+    long getOffset() {
+        return Long.parseLong(properties.getProperty("offset", "0"));
+    }
+
+}
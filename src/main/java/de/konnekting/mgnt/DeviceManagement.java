@@ -23,23 +23,44 @@ import de.konnekting.deviceconfig.exception.InvalidAddressFormatException;
 import de.konnekting.deviceconfig.exception.XMLFormatException;
 import de.konnekting.deviceconfig.utils.ByteArrayDiff;
 import de.konnekting.deviceconfig.utils.Helper;
+import de.konnekting.deviceconfig.utils.WritePlanner;
 import de.konnekting.xml.konnektingdevice.v0.KonnektingDevice;
 import de.root1.slicknx.Knx;
 import de.root1.slicknx.KnxException;
 import de.konnekting.mgnt.protocol0x01.ProgProtocol0x01;
+import de.konnekting.mgnt.protocol0x01.RetryPolicy;
+import de.konnekting.mgnt.protocol0x01.CancellationToken;
+import de.konnekting.mgnt.protocol0x01.CancelledException;
+import de.konnekting.mgnt.protocol0x01.Lzss;
 import de.konnekting.mgnt.protocol0x01.ProgProtocol0x01.DataReadResponse;
 import de.konnekting.xml.konnektingdevice.v0.Device;
 import de.konnekting.xml.konnektingdevice.v0.DeviceMemory;
 import java.io.BufferedInputStream;
-import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
 import java.io.File;
 import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
-import java.util.Arrays;
+import java.util.Date;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
 import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -69,37 +90,384 @@ public class DeviceManagement {
 
     }
     private final Logger log = LoggerFactory.getLogger(getClass());
-    private final java.util.ResourceBundle bundle = java.util.ResourceBundle.getBundle("de/konnekting/deviceconfig/i18n/language"); // NOI18N
-    private final List<ProgramProgressListener> listeners = new ArrayList<>();
 
-    private boolean abort;
+    /**
+     * CRC fields of all tables in the system table, see {@link SystemTable}
+     */
+    private static final int CRC_FIELDS_ADDRESS = 11;
+    private static final int CRC_FIELDS_LENGTH = 20;
+
+    /**
+     * how often data that did not pass verification is written again
+     */
+    private static final int VERIFY_REWRITES = 2;
+
+    private final java.util.ResourceBundle bundle = java.util.ResourceBundle.getBundle("de/konnekting/deviceconfig/i18n/language"); // NOI18N
+    private final ProgressDispatcher progressDispatcher = new ProgressDispatcher();
+
+    private volatile boolean abort;
+    private volatile CancellationToken cancellationToken;
+    private ProgrammingSession session;
+    private MemoryCache memoryCache;
+    private boolean skipUnchangedTables = false;
+    private boolean skipIdenticalData = false;
+    private boolean confirmIdenticalData = false;
+    private boolean compressDataWrites = false;
+    private boolean partialAgainstDevice = true;
+    private int writePageSize = 0;
+    private boolean verifyWrites = false;
+    private File journalDirectory;
     private final ProgProtocol0x01 protocol;
     private boolean isProgramming = false;
+    /**
+     * device info of the device in prog mode, null until read
+     */
+    private PropertyPageDeviceInfo deviceInfo;
     private int progressMaxSteps = 0;
     private int progressCurrent = 0;
+    private boolean progressPlanned = false;
 
     public DeviceManagement(Knx knx) {
-        protocol = ProgProtocol0x01.getInstance(knx);
+        this(ProgProtocol0x01.getInstance(knx));
+    }
+
+    /**
+     * @param protocol programming session to use, closed by {@link #close()}
+     */
+    DeviceManagement(ProgProtocol0x01 protocol) {
+        this.protocol = protocol;
+    }
+
+    /**
+     * Release the programming session on the KNX connection. All
+     * DeviceManagement instances of a connection share one telegram listener,
+     * which is removed when the last of them is closed.
+     */
+    public void close() {
+        protocol.close();
+    }
+
+    /**
+     * Set number of memory writes that may be in flight at once when writing
+     * tables. Default is 1, which waits for each ack before sending the next
+     * write, so writes are only pipelined if a larger window is set here.
+     * Devices that cannot keep up with a larger window are detected and fall
+     * back to 1 automatically.
+     *
+     * @param windowSize window size, at least 1
+     */
+    public void setMemoryWriteWindowSize(int windowSize) {
+        protocol.setMemoryWriteWindowSize(windowSize);
+    }
+
+    /**
+     * Set number of memory reads that may be in flight at once, f.i. when
+     * reading the system table. Default is 1, like the write paths, so reads
+     * are only pipelined if a larger window is set here. Devices that cannot
+     * keep up with a larger window are detected and fall back to 1
+     * automatically.
+     *
+     * @param windowSize window size, at least 1
+     */
+    public void setMemoryReadWindowSize(int windowSize) {
+        protocol.setMemoryReadWindowSize(windowSize);
+    }
+
+    /**
+     * Set number of data writes that may be in flight at once, when sending
+     * data or firmware. Default is 1, so data writes are only pipelined if a
+     * larger window is set here. As data writes carry no position, a missing
+     * ack continues the transfer with window size 1 after the acknowledged
+     * part, if the device supports resuming, or restarts it otherwise.
+     *
+     * @param windowSize window size, at least 1
+     */
+    public void setDataWriteWindowSize(int windowSize) {
+        protocol.setDataWriteWindowSize(windowSize);
+    }
+
+    /**
+     * Set how often memory writes ({@link ProgProtocol0x01#MSGTYPE_MEMORY_WRITE})
+     * or checksum writes ({@link ProgProtocol0x01#MSGTYPE_CHECKSUM_SET}) are
+     * sent again if the ack is missing, instead of failing the whole
+     * programming job.
+     *
+     * @param msgType message type of request
+     * @param policy policy to use
+     */
+    public void setRetryPolicy(byte msgType, RetryPolicy policy) {
+        protocol.setRetryPolicy(msgType, policy);
+    }
+
+    /**
+     * Skip writing tables whose CRC in the device's system table matches the
+     * CRC of the new table content. Applies to ALL, PARTIAL and APPDATA.
+     * Default is false, which always writes all tables.
+     *
+     * @param skipUnchangedTables true, to skip unchanged tables
+     */
+    public void setSkipUnchangedTables(boolean skipUnchangedTables) {
+        this.skipUnchangedTables = skipUnchangedTables;
+    }
+
+    /**
+     * Skip {@link #sendData(File, byte, byte)} and {@link #sendFOTB(File)} if
+     * the ledger in the journal directory states that exactly this content
+     * has already been sent to the device. Requires a journal directory and
+     * a device addressed by its individual address. Data sent while this is
+     * disabled is not recorded, as its checksums are not calculated then.
+     * Default is false.
+     *
+     * @param skipIdenticalData true, to skip identical data
+     */
+    public void setSkipIdenticalData(boolean skipIdenticalData) {
+        this.skipIdenticalData = skipIdenticalData;
+    }
+
+    /**
+     * Before skipping identical data, read it back from the device and
+     * compare size and CRC. Does not apply to firmware, which cannot be read
+     * back. Default is false.
+     *
+     * @param confirmIdenticalData true, to confirm the ledger by reading the
+     * data back
+     */
+    public void setConfirmIdenticalData(boolean confirmIdenticalData) {
+        this.confirmIdenticalData = confirmIdenticalData;
+    }
+
+    /**
+     * Send data {@link Lzss} compressed, if that makes it smaller and the
+     * device reports
+     * {@link PropertyPageDeviceInfo#CAPABILITY_COMPRESSED_DATA_WRITE} in its
+     * device info. Other devices get the data raw. Default is false.
+     *
+     * @param compressDataWrites true, to compress data writes
+     */
+    public void setCompressDataWrites(boolean compressDataWrites) {
+        this.compressDataWrites = compressDataWrites;
+    }
+
+    /**
+     * Set how PARTIAL programming finds out what is on the device. If true
+     * (default), the device memory section of the configuration is only used
+     * if its CRCs match those reported by the device. Otherwise the tables are
+     * read from the device and diffed. If false, the configuration is always
+     * trusted and a missing section leads to a full write.
+     *
+     * @param partialAgainstDevice true, to diff against the real device memory
+     */
+    public void setPartialAgainstDevice(boolean partialAgainstDevice) {
+        this.partialAgainstDevice = partialAgainstDevice;
+    }
+
+    /**
+     * Set EEPROM/flash page size of the device. Partial writes then never
+     * cross a page boundary, so each write touches only one page.
+     *
+     * @param pageSize page size in bytes, 0 (default) for no alignment
+     */
+    public void setWritePageSize(int pageSize) {
+        if (pageSize < 0) {
+            throw new IllegalArgumentException("page size must not be negative");
+        }
+        this.writePageSize = pageSize;
+    }
+
+    /**
+     * Read back what has been written when programming, together with the
+     * CRC fields of the system table, and write mismatching bytes again. Only
+     * written ranges are read, in a pass after all writes. The reads are only
+     * pipelined if {@link #setMemoryReadWindowSize(int)} allows it, so with
+     * the default window this takes about as many round trips as the writing.
+     * Default is false.
+     *
+     * @param verifyWrites true, to verify written data
+     */
+    public void setVerifyWrites(boolean verifyWrites) {
+        this.verifyWrites = verifyWrites;
     }
 
     /**
-     * trigger programming abort
+     * Set directory to keep a journal of each programming job in. If
+     * programming fails halfway, f.i. due to a timeout or abort, the next
+     * attempt on the same device only writes what the device has not
+     * acknowledged yet, provided the device's table addresses and CRCs still
+     * match the journal. Data transfers via {@link #sendData(File, byte, byte)}
+     * keep a checkpoint, so a device that supports it continues an
+     * interrupted transfer, and a ledger of the data sent there.
+     *
+     * @param journalDirectory existing directory, or null (default) for no
+     * journal
+     */
+    public void setJournalDirectory(File journalDirectory) {
+        this.journalDirectory = journalDirectory;
+    }
+
+    /**
+     * trigger programming abort. A running operation stops within one round
+     * trip and programming mode of the device is switched off.
      */
     public void abortOperation() {
         abort = true;
+        CancellationToken token = cancellationToken;
+        if (token != null) {
+            token.cancel();
+        }
         log.info("Abort triggered!");
         fireProgressStatusMessage(getLangString("cancelled"));
     }
 
     /**
-     * Program the device. This method will block until all is done or exception
-     * occured
+     * Make the following requests cancellable by
+     * {@link #abortOperation()}. Nested operations share the token of the
+     * outer one.
+     *
+     * @return new token, or null if an outer operation already has one
+     */
+    private CancellationToken startCancellable() {
+        if (cancellationToken != null) {
+            return null;
+        }
+        CancellationToken token = new CancellationToken();
+        cancellationToken = token;
+        protocol.setCancellationToken(token);
+        return token;
+    }
+
+    private void endCancellable(CancellationToken token) {
+        if (token != null) {
+            protocol.setCancellationToken(null);
+            cancellationToken = null;
+        }
+    }
+
+    /**
+     * Switch off programming mode after a failed or cancelled operation, so
+     * the device returns to normal operation. Errors are only logged.
+     */
+    private void leaveProgMode(String individualAddress) {
+        if (!isProgramming) {
+            return;
+        }
+        // a pending interrupt would fail the request right away
+        boolean interrupted = Thread.interrupted();
+        try {
+            log.info("Switching off programming mode of {}", individualAddress);
+            stopProgMode(individualAddress);
+        } catch (KnxException ex) {
+            log.warn("Not able to switch off programming mode of " + individualAddress, ex);
+            isProgramming = false;
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Program the device without blocking the calling thread. Programming
+     * runs on the given executor, f.i. a small thread pool shared by many
+     * devices or an executor creating a virtual thread per task.
      *
      * @param deviceConfigContainer
      * @param programmingTask the task to run for programming
-     * @throws de.konnekting.deviceconfig.ProgramException
+     * @param executor executor to run programming on
+     * @return future, completed exceptionally with a
+     * {@link DeviceManagementException} if programming failed
      */
-    public void program(DeviceConfigContainer deviceConfigContainer, ProgrammingTask programmingTask) throws DeviceManagementException {
+    public CompletableFuture<Void> programAsync(DeviceConfigContainer deviceConfigContainer, ProgrammingTask programmingTask, Executor executor) {
+        return CompletableFuture.runAsync(() -> {
+            try {
+                program(deviceConfigContainer, programmingTask);
+            } catch (DeviceManagementException ex) {
+                throw new CompletionException(ex);
+            }
+        }, executor);
+    }
+
+    /**
+     * Tables and flags of one programming job, derived from the configuration
+     * without bus access
+     */
+    static class Job {
+
+        String individualAddress;
+        Device device;
+        DeviceMemory lastDeviceMemory;
+        boolean doIndividualAddress;
+        boolean partial;
+        boolean inSession;
+        final List<Table> tables = new ArrayList<>();
+    }
+
+    static class Table {
+
+        final ChecksumIdentifier identifier;
+        final String readingStatusKey;
+        final byte[] lastBytes;
+        final byte[] newBytes;
+        final long newCrc;
+
+        Table(ChecksumIdentifier identifier, String readingStatusKey, byte[] lastBytes, byte[] newBytes) {
+            this.identifier = identifier;
+            this.readingStatusKey = readingStatusKey;
+            this.lastBytes = lastBytes;
+            this.newBytes = newBytes;
+            this.newCrc = crc32(newBytes);
+        }
+
+        int getAddress(SystemTable systemTable) {
+            switch (identifier) {
+                case ADDRESS_TABLE:
+                    return systemTable.getAddressTableAddress();
+                case ASSOCIATION_TABLE:
+                    return systemTable.getAssociationTableAddress();
+                case COMMOBJECT_TABLE:
+                    return systemTable.getCommobjectTableAddress();
+                default:
+                    return systemTable.getParameterTableAddress();
+            }
+        }
+
+        long getCrc(SystemTable systemTable) {
+            return DeviceManagement.getCrc(systemTable, identifier);
+        }
+    }
+
+    private static long getCrc(SystemTable systemTable, ChecksumIdentifier identifier) {
+        switch (identifier) {
+            case SYSTEM_TABLE:
+                return systemTable.getSystemTableCRC();
+            case ADDRESS_TABLE:
+                return systemTable.getAddressTableCRC();
+            case ASSOCIATION_TABLE:
+                return systemTable.getAssociationTableCRC();
+            case COMMOBJECT_TABLE:
+                return systemTable.getCommObjectTableCRC();
+            default:
+                return systemTable.getParamTableCRC();
+        }
+    }
+
+    /**
+     * @return number of memory read or write messages for the blocks
+     */
+    private static int getTelegramCount(List<ByteArrayDiff.DataBlock> blocks) {
+        int count = 0;
+        for (ByteArrayDiff.DataBlock block : blocks) {
+            count += (int) Math.ceil((double) block.getData().length / (double) ProgProtocol0x01.MEMORY_READWRITE_BYTES_MAX);
+        }
+        return count;
+    }
+
+    private static long crc32(byte[] data) {
+        CRC32 crc32 = new CRC32();
+        crc32.update(data);
+        return crc32.getValue();
+    }
+
+    private Job prepareJob(DeviceConfigContainer deviceConfigContainer, ProgrammingTask programmingTask) {
 
         boolean doIndividualAddress = false;
         boolean doCommObjects = false;
@@ -128,77 +496,348 @@ public class DeviceManagement {
                 partial = false;
                 break;
         }
+
+        if (!deviceConfigContainer.hasConfiguration()) {
+            throw new IllegalArgumentException("Device " + deviceConfigContainer + " has no programmable configuration");
+        }
+
+        KonnektingDevice konnektingDevice = deviceConfigContainer.getDevice();
+        DeviceMemory lastDeviceMemory = konnektingDevice.getConfiguration().getDeviceMemory();
+        DeviceMemory newDeviceMemory = deviceConfigContainer.createWorkingCopyDeviceMemory();
+
+        Job job = new Job();
+        job.individualAddress = deviceConfigContainer.getIndividualAddress();
+        job.device = konnektingDevice.getDevice();
+        job.lastDeviceMemory = lastDeviceMemory;
+        job.doIndividualAddress = doIndividualAddress;
+
+        if (lastDeviceMemory == null && partial && !partialAgainstDevice) {
+            log.warn("Need to force partial=false due to missing device memory section in configuration. ");
+            partial = false;
+        }
+        job.partial = partial;
+
+        if (doCommObjects) {
+            job.tables.add(new Table(ChecksumIdentifier.ADDRESS_TABLE, "readingAddressTable",
+                    lastDeviceMemory == null ? new byte[]{} : lastDeviceMemory.getAddressTable(), newDeviceMemory.getAddressTable()));
+            job.tables.add(new Table(ChecksumIdentifier.ASSOCIATION_TABLE, "readingAssociationTable",
+                    lastDeviceMemory == null ? new byte[]{} : lastDeviceMemory.getAssociationTable(), newDeviceMemory.getAssociationTable()));
+            job.tables.add(new Table(ChecksumIdentifier.COMMOBJECT_TABLE, "readingCommObjectTable",
+                    lastDeviceMemory == null ? new byte[]{} : lastDeviceMemory.getCommObjectTable(), newDeviceMemory.getCommObjectTable()));
+        }
+        if (doParams) {
+            job.tables.add(new Table(ChecksumIdentifier.PARAMETER_TABLE, "readingParameterTable",
+                    lastDeviceMemory == null ? new byte[]{} : lastDeviceMemory.getParameterTable(), newDeviceMemory.getParameterTable()));
+        }
+        for (Table table : job.tables) {
+            log.debug("crc32 {}: {}", table.identifier, String.format("0x%08x", table.newCrc));
+        }
+        return job;
+    }
+
+    /**
+     * Plan programming without touching the bus. The device is assumed to
+     * still hold what the device memory section of the configuration says was
+     * programmed last. Without that section, all tables are planned as full
+     * writes and the plan is an upper bound. While a programming session is
+     * open, the plan is that of {@link ProgrammingSession#program(ProgrammingTask)},
+     * without prog mode handshake, stop and restart.
+     *
+     * @param deviceConfigContainer
+     * @param programmingTask the task to plan
+     * @return operations {@link #program(DeviceConfigContainer, ProgrammingTask)}
+     * will send, with telegram count and time estimate
+     * @throws DeviceManagementException
+     */
+    public ProgrammingPlan planProgramming(DeviceConfigContainer deviceConfigContainer, ProgrammingTask programmingTask) throws DeviceManagementException {
         try {
-            fireProgressStatusMessage(getLangString("initialize")); // "Initialize..."
+            Job job = prepareJob(deviceConfigContainer, programmingTask);
+            job.inSession = session != null;
+            return planProgramming(job);
+        } catch (KnxException | IllegalArgumentException ex) {
+            throw new DeviceManagementException("Planning failed", ex);
+        }
+    }
 
-            if (!deviceConfigContainer.hasConfiguration()) {
-                throw new IllegalArgumentException("Device " + deviceConfigContainer + " has no programmable configuration");
-            }
+    /**
+     * Plan a programming job, with the system table of the session cache or
+     * of the configuration
+     */
+    ProgrammingPlan planProgramming(Job job) throws KnxException {
+        if (isCached(SystemTable.SYSTEMTABLE_ADDRESS, SystemTable.SIZE)) {
+            return planProgramming(job, new SystemTable(memoryCache.get(SystemTable.SYSTEMTABLE_ADDRESS, SystemTable.SIZE)), null);
+        }
+        byte[] lastSystemTable = job.lastDeviceMemory == null ? null : job.lastDeviceMemory.getSystemTable();
+        if (lastSystemTable == null || lastSystemTable.length != SystemTable.SIZE) {
+            return planProgramming(job, null, null);
+        }
+        // the stored system table holds the CRCs from before the last programming, the tables written then are what the device has now
+        Map<ChecksumIdentifier, Long> deviceCrcs = new LinkedHashMap<>();
+        for (Table table : job.tables) {
+            deviceCrcs.put(table.identifier, crc32(table.lastBytes));
+        }
+        return planProgramming(job, new SystemTable(lastSystemTable.clone()), deviceCrcs);
+    }
 
-            KonnektingDevice konnektingDevice = deviceConfigContainer.getDevice();
-            Device device = konnektingDevice.getDevice();
+    /**
+     * Plan the operations of a programming job. Tables are decided by
+     * {@link #addTables(Job, SystemTable, Map, ProgrammingJournal, DeviceMemoryImage, TableReader)},
+     * just like {@link #program(DeviceConfigContainer, ProgrammingTask)} does.
+     *
+     * @param job job to plan
+     * @param systemTable system table of device, or null if unknown
+     * @param deviceCrcs table CRCs of device, or null to take them from the
+     * system table
+     * @return plan
+     */
+    private ProgrammingPlan planProgramming(Job job, SystemTable systemTable, Map<ChecksumIdentifier, Long> deviceCrcs) throws KnxException {
+        ProgrammingPlan plan = new ProgrammingPlan();
+        String ia = job.individualAddress;
+
+        if (job.inSession) {
+            // prog mode is already active
+        } else if (job.doIndividualAddress) {
+            addStep(plan, ProgProtocol0x01.MSGTYPE_PROGRAMMING_MODE_READ, -1, 0, ia, "pleasePressProgButton");
+        } else {
+            addStep(plan, ProgProtocol0x01.MSGTYPE_PROGRAMMING_MODE_READ, -1, 0, ia, "startProgramming");
+            addStep(plan, ProgProtocol0x01.MSGTYPE_PROGRAMMING_MODE_WRITE, -1, 0, ia, "startProgramming");
+            addStep(plan, ProgProtocol0x01.MSGTYPE_PROGRAMMING_MODE_READ, -1, 0, ia, "startProgramming");
+        }
+        if (!job.inSession) {
+            addStep(plan, ProgProtocol0x01.MSGTYPE_PROPERTY_PAGE_READ, -1, 0, ia, "startProgramming");
+        }
+        if (!isCached(SystemTable.SYSTEMTABLE_ADDRESS, SystemTable.SIZE)) {
+            addStep(plan, ProgProtocol0x01.MSGTYPE_MEMORY_READ, SystemTable.SYSTEMTABLE_ADDRESS, SystemTable.SIZE, ia, "readingSystemTable");
+        }
 
-            String individualAddress = deviceConfigContainer.getIndividualAddress();
-            DeviceMemory lastDeviceMemory = konnektingDevice.getConfiguration().getDeviceMemory();
-            DeviceMemory newDeviceMemory = deviceConfigContainer.createWorkingCopyDeviceMemory();
+        boolean systemTableChanged = true;
+        if (systemTable == null) {
+            plan.setInexact();
+        } else {
+            SystemTable copy = new SystemTable(systemTable.getData().clone());
+            copy.setIndividualAddress(ia);
+            systemTableChanged = copy.hasChanged();
+        }
+        if (systemTableChanged) {
+            addStep(plan, ProgProtocol0x01.MSGTYPE_MEMORY_WRITE, SystemTable.SYSTEMTABLE_WRITE_ADDRESS, SystemTable.SIZE - SystemTable.SYSTEMTABLE_WRITE_ADDRESS, ia, "writingSystemTable");
+            addStep(plan, ProgProtocol0x01.MSGTYPE_CHECKSUM_SET, -1, 0, ia, "writingSystemTableChecksum");
+        }
 
-            // --------------
-            fireIncreaseMaxSteps(4);
-            CRC32 crc32 = new CRC32();
+        DeviceMemoryImage image = new DeviceMemoryImage();
+        List<Table> written;
+        if (systemTable == null) {
+            // table addresses and CRCs are unknown, each table is a full write
+            written = job.tables;
+            for (Table table : written) {
+                if (job.partial && partialAgainstDevice) {
+                    addStep(plan, ProgProtocol0x01.MSGTYPE_MEMORY_READ, -1, table.newBytes.length, ia, table.readingStatusKey);
+                }
+                addStep(plan, ProgProtocol0x01.MSGTYPE_MEMORY_WRITE, -1, table.newBytes.length, ia, "writingDeviceMemory");
+            }
+        } else {
+            ProgrammingJournal journal = openJournal(ia, job, systemTable, deviceCrcs);
+            written = addTables(job, systemTable, deviceCrcs, journal, image, (table, address) -> {
+                if (isCached(address, table.newBytes.length)) {
+                    return memoryCache.get(address, table.newBytes.length);
+                }
+                // content is known only after reading, plan a full write
+                addStep(plan, ProgProtocol0x01.MSGTYPE_MEMORY_READ, address, table.newBytes.length, ia, table.readingStatusKey);
+                plan.setInexact();
+                return null;
+            });
+        }
+        List<ByteArrayDiff.DataBlock> writes = getWrites(image);
+        for (ByteArrayDiff.DataBlock block : writes) {
+            addStep(plan, ProgProtocol0x01.MSGTYPE_MEMORY_WRITE, block.getIndex(), block.getData().length, ia, "writingDeviceMemory");
+        }
+        for (Table table : written) {
+            addStep(plan, ProgProtocol0x01.MSGTYPE_CHECKSUM_SET, -1, 0, ia, getChecksumStatusKey(table.identifier));
+        }
 
-            fireProgressStatusMessage(getLangString("readingAddressTable"));
-            byte[] lastAddressTableBytes = lastDeviceMemory == null ? new byte[]{} : lastDeviceMemory.getAddressTable();
-            byte[] newAddressTableBytes = newDeviceMemory.getAddressTable();
-            crc32.update(newAddressTableBytes);
-            long crc32AddressTable = crc32.getValue();
-            log.debug("crc32AddressTable: {}", String.format("0x%04x", crc32AddressTable));
-            crc32.reset();
-            fireSingleStepDone();
+        if (verifyWrites) {
+            if (systemTableChanged) {
+                addStep(plan, ProgProtocol0x01.MSGTYPE_MEMORY_READ, SystemTable.SYSTEMTABLE_WRITE_ADDRESS, SystemTable.SIZE - SystemTable.SYSTEMTABLE_WRITE_ADDRESS, ia, "verifying");
+            }
+            if (systemTable == null) {
+                for (Table table : written) {
+                    addStep(plan, ProgProtocol0x01.MSGTYPE_MEMORY_READ, -1, table.newBytes.length, ia, "verifying");
+                }
+            }
+            for (ByteArrayDiff.DataBlock block : writes) {
+                addStep(plan, ProgProtocol0x01.MSGTYPE_MEMORY_READ, block.getIndex(), block.getData().length, ia, "verifying");
+            }
+            if (systemTableChanged || !written.isEmpty()) {
+                addStep(plan, ProgProtocol0x01.MSGTYPE_MEMORY_READ, CRC_FIELDS_ADDRESS, CRC_FIELDS_LENGTH, ia, "verifying");
+            }
+        }
 
-            fireProgressStatusMessage(getLangString("readingAssociationTable"));
-            byte[] lastAssociationTableBytes = lastDeviceMemory == null ? new byte[]{} : lastDeviceMemory.getAssociationTable();
-            byte[] newAssociationTableBytes = newDeviceMemory.getAssociationTable();
-            crc32.update(newAssociationTableBytes);
-            long crc32AssocTable = crc32.getValue();
-            log.debug("crc32AssocTable: {}", String.format("0x%04x", crc32AssocTable));
-            crc32.reset();
-            fireSingleStepDone();
+        if (!job.inSession) {
+            addStep(plan, ProgProtocol0x01.MSGTYPE_PROGRAMMING_MODE_WRITE, -1, 0, ia, "stoppingProgramming");
+            addStep(plan, ProgProtocol0x01.MSGTYPE_RESTART, -1, 0, ia, "triggerDeviceRestart");
+        }
+        log.debug("Planned {}", plan);
+        return plan;
+    }
 
-            fireProgressStatusMessage(getLangString("readingCommObjectTable"));
-            byte[] lastCommObjectTableBytes = lastDeviceMemory == null ? new byte[]{} : lastDeviceMemory.getCommObjectTable();
-            byte[] newCommObjectTableBytes = newDeviceMemory.getCommObjectTable();
-            crc32.update(newCommObjectTableBytes);
-            long crc32CommObjTable = crc32.getValue();
-            log.debug("crc32CommObjTable: {}", String.format("0x%04x", crc32CommObjTable));
-            crc32.reset();
-            fireSingleStepDone();
+    /**
+     * @return true, if range has been read in the open session and not been
+     * written since
+     */
+    private boolean isCached(int address, int length) {
+        return memoryCache != null && memoryCache.contains(address, length);
+    }
 
-            fireProgressStatusMessage(getLangString("readingParameterTable"));
-            byte[] lastParameterTableBytes = lastDeviceMemory == null ? new byte[]{} : lastDeviceMemory.getParameterTable();
-            byte[] newParameterTableBytes = newDeviceMemory.getParameterTable();
-            crc32.update(newParameterTableBytes);
-            long crc32ParamTable = crc32.getValue();
-            log.debug("crc32ParamTable: {}", String.format("0x%04x", crc32ParamTable));
-            crc32.reset();
-            
-            fireSingleStepDone();
+    /**
+     * Add step to plan. Memory operations take one telegram per
+     * {@link ProgProtocol0x01#MEMORY_READWRITE_BYTES_MAX} bytes, all others
+     * one telegram.
+     */
+    private void addStep(ProgrammingPlan plan, byte requestType, int address, int length, String individualAddress, String statusKey) {
+        int telegrams = length == 0 ? 1 : (int) Math.ceil((double) length / (double) ProgProtocol0x01.MEMORY_READWRITE_BYTES_MAX);
+        double rtt = protocol.getRttEstimator().getSmoothedRtt(requestType, individualAddress);
+        long millis = Math.round(telegrams * (rtt < 0 ? ProgrammingPlan.DEFAULT_ROUND_TRIP : rtt));
+        if (requestType == ProgProtocol0x01.MSGTYPE_PROGRAMMING_MODE_READ) {
+            // exclusivity checks wait for late answers the whole timeout
+            millis += protocol.getProgrammingModeReadTimeout();
+        }
+        plan.add(new ProgrammingPlan.Step(requestType, address, length, telegrams, millis, getLangString(statusKey)));
+    }
 
-            if (lastDeviceMemory == null && partial) {
-                log.warn("Need to force partial=false due to missing device memory section in configuration. ");
-                partial = false;
+    /**
+     * Open a programming session: enter prog mode and check the device info
+     * once, for several operations in a row. Programming mode stays active
+     * until the session is closed.
+     *
+     * @param deviceConfigContainer device to work with
+     * @param progButton true, if the device is selected by its pressed prog
+     * button instead of its individual address
+     * @return open session, has to be closed when done
+     * @throws DeviceManagementException if device is not reachable or does
+     * not match the configuration
+     */
+    public ProgrammingSession openSession(DeviceConfigContainer deviceConfigContainer, boolean progButton) throws DeviceManagementException {
+        if (session != null) {
+            throw new IllegalStateException("Programming session already open. Close it first.");
+        }
+        Device device = deviceConfigContainer.getDevice().getDevice();
+        String individualAddress = deviceConfigContainer.getIndividualAddress();
+        CancellationToken token = startCancellable();
+        boolean opened = false;
+        try {
+            if (progButton) {
+                fireProgressStatusMessage(getLangString("pleasePressProgButton"));
+                startProgMode(null, device.getManufacturerId(), device.getDeviceId(), device.getRevision(), device.getSystemType());
+            } else {
+                fireProgressStatusMessage(getLangString("startProgramming"));
+                startProgMode(individualAddress, device.getManufacturerId(), device.getDeviceId(), device.getRevision(), device.getSystemType());
             }
-            // --------------
+            opened = true;
+        } catch (CancelledException ex) {
+            abort = false;
+            throw new DeviceManagementException("Opening programming session aborted", ex);
+        } catch (KnxException ex) {
+            throw new DeviceManagementException("Error getting into programing mode", ex);
+        } finally {
+            endCancellable(token);
+            if (!opened) {
+                leaveProgMode(individualAddress);
+            }
+        }
+        memoryCache = new MemoryCache();
+        session = new ProgrammingSession(this, deviceConfigContainer);
+        return session;
+    }
+
+    /**
+     * Stop prog mode of session and optionally restart device
+     */
+    void closeSession(ProgrammingSession s, boolean restart) throws DeviceManagementException {
+        if (session != s) {
+            return;
+        }
+        session = null;
+        memoryCache = null;
+        String individualAddress = s.getDeviceConfigContainer().getIndividualAddress();
+        CancellationToken token = startCancellable();
+        try {
+            fireProgressStatusMessage(getLangString("stoppingProgramming"));
+            stopProgMode(individualAddress);
+            if (restart) {
+                fireProgressStatusMessage(getLangString("triggerDeviceRestart"));
+                protocol.restart(individualAddress);
+            }
+        } catch (KnxException ex) {
+            throw new DeviceManagementException("Closing programming session failed", ex);
+        } finally {
+            endCancellable(token);
+            leaveProgMode(individualAddress);
+        }
+    }
+
+    byte[] sessionMemoryRead(int address, int length) throws DeviceManagementException {
+        CancellationToken token = startCancellable();
+        try {
+            return memoryRead(address, length);
+        } catch (KnxException ex) {
+            throw new DeviceManagementException("Reading memory failed", ex);
+        } finally {
+            endCancellable(token);
+        }
+    }
+
+    /**
+     * Program the device. This method will block until all is done or exception
+     * occured. The job is planned first, so progress reports the total number
+     * of steps from the beginning. The total is corrected only if the device
+     * differs from what the configuration says was programmed last.
+     *
+     * @param deviceConfigContainer
+     * @param programmingTask the task to run for programming
+     * @throws de.konnekting.deviceconfig.ProgramException
+     * @see #planProgramming(DeviceConfigContainer, ProgrammingTask)
+     */
+    public void program(DeviceConfigContainer deviceConfigContainer, ProgrammingTask programmingTask) throws DeviceManagementException {
+        program(deviceConfigContainer, programmingTask, false);
+    }
+
+    /**
+     * Program the device of the open session. Prog mode is already active and
+     * stays active.
+     */
+    void programInSession(DeviceConfigContainer deviceConfigContainer, ProgrammingTask programmingTask) throws DeviceManagementException {
+        if (session == null) {
+            throw new IllegalStateException("No programming session open");
+        }
+        program(deviceConfigContainer, programmingTask, true);
+    }
+
+    private void program(DeviceConfigContainer deviceConfigContainer, ProgrammingTask programmingTask, boolean inSession) throws DeviceManagementException {
+
+        CancellationToken token = startCancellable();
+        try {
+            fireProgressStatusMessage(getLangString("initialize")); // "Initialize..."
+
+            Job job = prepareJob(deviceConfigContainer, programmingTask);
+            job.inSession = inSession;
+            String individualAddress = job.individualAddress;
+            Device device = job.device;
+
+            ProgrammingPlan plan = planProgramming(job);
+            log.info("Programming {}, estimated {}ms", plan, plan.getEstimatedMillis());
+            startPlannedProgress(plan.getTelegramCount());
 
             checkAbort();
 
             try {
-                if (doIndividualAddress) {
+                if (inSession) {
+                    log.debug("Programming within session, device is already in prog mode");
+                } else if (job.doIndividualAddress) {
                     log.info("About to program with new individual address '" + individualAddress + "'. Please press 'program' button on target device NOW ...");
                     fireProgressStatusMessage(getLangString("pleasePressProgButton"));//Please press 'program' button...
-                    fireIncreaseMaxSteps(2);
                     startProgMode(null, device.getManufacturerId(), device.getDeviceId(), device.getRevision(), device.getSystemType());
+                    // the device may answer with its old or new address until restarted
+                    protocol.setTargetAddress(null);
                 } else {
-                    fireIncreaseMaxSteps(4);
                     startProgMode(individualAddress, device.getManufacturerId(), device.getDeviceId(), device.getRevision(), device.getSystemType());
                 }
             } catch (KnxException ex) {
@@ -208,136 +847,370 @@ public class DeviceManagement {
 
             checkAbort();
 
-            fireIncreaseMaxSteps(1);
             // read system table bytes from arduino... create local system table object to make table "human readable"
             fireProgressStatusMessage(getLangString("readingSystemTable"));
             SystemTable systemTable = new SystemTable(memoryRead(SystemTable.SYSTEMTABLE_ADDRESS, SystemTable.SIZE));
-            fireSingleStepDone();
+            log.debug("read system table: {}", systemTable);
+
+            // the device may differ from what the configuration says
+            setPlannedProgress(planProgramming(job, systemTable, null).getTelegramCount());
+
             // set IA in system table            
             systemTable.setIndividualAddress(individualAddress);
-            log.debug("read system table: {}", systemTable);
-            crc32.update(systemTable.getWriteData());
-            long crc32SystemRWTable = crc32.getValue();
+            long crc32SystemRWTable = crc32(systemTable.getWriteData());
             log.debug("crc32systemRWTable: {}", String.format("0x%04x", crc32SystemRWTable));
-            crc32.reset();
-            
-            
 
             checkAbort();
 
+            // everything written, to be verified
+            List<ByteArrayDiff.DataBlock> verifyBlocks = new ArrayList<>();
+            Map<ChecksumIdentifier, Long> verifyChecksums = new LinkedHashMap<>();
+
             if (systemTable.hasChanged()) {
                 //Writing system table ... if changed. It's not required to write table partially, it's anyhow only 16 bytes
                 fireProgressStatusMessage(getLangString("writingSystemTable"));
                 memoryWrite(SystemTable.SYSTEMTABLE_WRITE_ADDRESS, systemTable.getWriteData());
                 fireProgressStatusMessage(getLangString("writingSystemTableChecksum"));
                 checksumSet(ChecksumIdentifier.SYSTEM_TABLE, crc32SystemRWTable);
+                verifyBlocks.add(new ByteArrayDiff.DataBlock(SystemTable.SYSTEMTABLE_WRITE_ADDRESS, systemTable.getWriteData()));
+                verifyChecksums.put(ChecksumIdentifier.SYSTEM_TABLE, crc32SystemRWTable);
             }
 
             checkAbort();
 
-            if (doCommObjects) {
-                if (partial) {
-
-                    fireProgressStatusMessage(getLangString("writingAddressTable"));
-                    List<ByteArrayDiff.DataBlock> addressTableDiff = ByteArrayDiff.getDiffData(lastAddressTableBytes, newAddressTableBytes);
-                    writeDataBlocks(systemTable.getAddressTableAddress(), addressTableDiff);
-                    fireProgressStatusMessage(getLangString("writingAddressTableChecksum"));
-                    checksumSet(ChecksumIdentifier.ADDRESS_TABLE, crc32AddressTable);
-
-                    fireProgressStatusMessage(getLangString("writingAssociationTable"));
-                    List<ByteArrayDiff.DataBlock> assocTableDiff = ByteArrayDiff.getDiffData(lastAssociationTableBytes, newAssociationTableBytes);
-                    writeDataBlocks(systemTable.getAssociationTableAddress(), assocTableDiff);
-                    fireProgressStatusMessage(getLangString("writingAssociationTableChecksum"));
-                    checksumSet(ChecksumIdentifier.ASSOCIATION_TABLE, crc32AssocTable);
-
-                    fireProgressStatusMessage(getLangString("writingCommObjectTable"));
-                    List<ByteArrayDiff.DataBlock> comObjTableDiff = ByteArrayDiff.getDiffData(lastCommObjectTableBytes, newCommObjectTableBytes);
-                    writeDataBlocks(systemTable.getAddressTableAddress(), comObjTableDiff);
-                    fireProgressStatusMessage(getLangString("writingCommObjectTableChecksum"));
-                    checksumSet(ChecksumIdentifier.COMMOBJECT_TABLE, crc32CommObjTable);                    
-
+            // all tables to write, placed at their address, so adjacent tables are written as one stream
+            DeviceMemoryImage image = new DeviceMemoryImage();
+            Map<ChecksumIdentifier, Long> checksums = new LinkedHashMap<>();
+
+            ProgrammingJournal journal = openJournal(individualAddress, job, systemTable, null);
+            List<Table> written = addTables(job, systemTable, null, journal, image, (table, address) -> {
+                log.info("Device memory section of configuration is missing or outdated. Reading table at {} from device.", String.format("0x%04x", address));
+                fireProgressStatusMessage(getLangString(table.readingStatusKey));
+                return memoryRead(address, table.newBytes.length);
+            });
+            for (Table table : job.tables) {
+                if (!written.contains(table)) {
+                    log.info("{} is already on the device (crc32 {}). Skipping.", table.identifier, String.format("0x%08x", table.newCrc));
                 } else {
-                    // do the whole memory
-                    fireProgressStatusMessage(getLangString("writingAddressTable"));
-                    memoryWrite(systemTable.getAddressTableAddress(), newAddressTableBytes);
-                    fireProgressStatusMessage(getLangString("writingAddressTableChecksum"));
-                    checksumSet(ChecksumIdentifier.ADDRESS_TABLE, crc32AddressTable);                    
-
-                    fireProgressStatusMessage(getLangString("writingAssociationTable"));
-                    memoryWrite(systemTable.getAssociationTableAddress(), newAssociationTableBytes);
-                    fireProgressStatusMessage(getLangString("writingAssociationTableChecksum"));
-                    checksumSet(ChecksumIdentifier.ASSOCIATION_TABLE, crc32AssocTable);                    
-
-                    fireProgressStatusMessage(getLangString("writingCommObjectTable"));
-                    memoryWrite(systemTable.getCommobjectTableAddress(), newCommObjectTableBytes);
-                    fireProgressStatusMessage(getLangString("writingCommObjectTableChecksum"));
-                    checksumSet(ChecksumIdentifier.COMMOBJECT_TABLE, crc32CommObjTable);                       
+                    checksums.put(table.identifier, table.newCrc);
+                    if (journal != null) {
+                        journal.begin(table.identifier, table.getAddress(systemTable), table.getCrc(systemTable), table.newCrc);
+                    }
                 }
             }
+            if (journal != null) {
+                saveJournal(journal);
+            }
 
             checkAbort();
 
-            if (doParams) {
-                fireProgressStatusMessage(getLangString("writingParameterTable"));
-                if (partial) {
-                    List<ByteArrayDiff.DataBlock> paramTableDiff = ByteArrayDiff.getDiffData(lastParameterTableBytes, newParameterTableBytes);
-                    writeDataBlocks(systemTable.getParameterTableAddress(), paramTableDiff);
-                } else {
-                    memoryWrite(systemTable.getParameterTableAddress(), newParameterTableBytes);
+            List<ByteArrayDiff.DataBlock> writes = getWrites(image);
+            verifyBlocks.addAll(writes);
+            verifyChecksums.putAll(checksums);
+            // reading tables from the device may have shown less to write than planned
+            int remaining = checksums.size() + (inSession ? 0 : 2) + getTelegramCount(writes);
+            if (verifyWrites) {
+                remaining += getVerifyTelegramCount(verifyBlocks, verifyChecksums);
+            }
+            setPlannedProgress(progressCurrent + remaining);
+
+            if (!checksums.isEmpty()) {
+                fireProgressStatusMessage(getLangString("writingDeviceMemory"));
+                log.debug("Writing {} dirty bytes with {} write(s)", image.getDirtyByteCount(), writes.size());
+                for (ByteArrayDiff.DataBlock write : writes) {
+                    memoryWrite(write.getIndex(), write.getData(), journal);
+                }
+                for (Map.Entry<ChecksumIdentifier, Long> entry : checksums.entrySet()) {
+                    fireProgressStatusMessage(getLangString(getChecksumStatusKey(entry.getKey())));
+                    checksumSet(entry.getKey(), entry.getValue());
+                    if (journal != null) {
+                        journal.checksumSet(entry.getKey());
+                        saveJournal(journal);
+                    }
                 }
-                fireProgressStatusMessage(getLangString("writingParameterTableChecksum"));
-                checksumSet(ChecksumIdentifier.PARAMETER_TABLE, crc32ParamTable);       
+            }
+            if (verifyWrites) {
+                verify(verifyBlocks, verifyChecksums);
+            }
+            if (journal != null) {
+                // the device has everything now
+                journal.delete();
             }
 
             checkAbort();
 
-            fireIncreaseMaxSteps(2);
-            log.info("Stopping programming");
-            fireProgressStatusMessage(getLangString("stoppingProgramming"));//Stopping programming...");
-            stopProgMode(individualAddress);
-            fireSingleStepDone();
+            if (!inSession) {
+                log.info("Stopping programming");
+                fireProgressStatusMessage(getLangString("stoppingProgramming"));//Stopping programming...");
+                stopProgMode(individualAddress);
+            }
 
             // update the device memory in config section, as we now have successfully programmed the device
             deviceConfigContainer.updateConfigDeviceMemory(systemTable);
 
-            log.info("Restart device");
-            fireProgressStatusMessage(getLangString("triggerDeviceRestart"));//Trigger device restart...");
-            protocol.restart(individualAddress);
-            fireSingleStepDone();
+            if (!inSession) {
+                log.info("Restart device");
+                fireProgressStatusMessage(getLangString("triggerDeviceRestart"));//Trigger device restart...");
+                protocol.restart(individualAddress);
+                fireSingleStepDone();
+            }
 
-            log.info("All done.");
+            log.info("All done. {} request(s) had to be sent again.", protocol.getRetryCount());
             fireProgressStatusMessage(getLangString("done"));//All done.");
             deviceConfigContainer.writeConfig();
 
+        } catch (CancelledException ex) {
+            abort = false;
+            throw new DeviceManagementException("Programming aborted", ex);
         } catch (KnxException | IllegalArgumentException | XMLFormatException ex) {
             throw new DeviceManagementException("Programming failed", ex);
+        } finally {
+            progressPlanned = false;
+            endCancellable(token);
+            if (!inSession) {
+                leaveProgMode(deviceConfigContainer.getIndividualAddress());
+            }
         }
 
     }
 
     /**
-     * Writes diff data blocks to memory. This is used when doing partial
-     * programming to speed up the programming
+     * Source of the table content currently on the device, for partial
+     * programming
+     */
+    @FunctionalInterface
+    private interface TableReader {
+
+        /**
+         * @param table table to read
+         * @param address memory address of table on device
+         * @return content on device, or null if unknown
+         */
+        byte[] read(Table table, int address) throws KnxException;
+    }
+
+    /**
+     * Decide which tables of a job have to be written and put them into the
+     * image. Tables whose checksum an interrupted run already set, and
+     * unchanged tables if skipping them is enabled, are left out. In partial
+     * mode, only bytes differing from what is on the device are marked for
+     * writing. Bytes the journal records as acknowledged are never marked.
+     * Used for planning and programming alike, so the plan shows what
+     * programming does.
+     *
+     * @param job job to decide for
+     * @param systemTable system table of device
+     * @param deviceCrcs table CRCs of device, or null to take them from the
+     * system table
+     * @param journal journal of device, or null
+     * @param image image to put tables into
+     * @param reader reads a table from the device if the configuration does
+     * not know its content
+     * @return tables to write, in order of the job
+     */
+    private List<Table> addTables(Job job, SystemTable systemTable, Map<ChecksumIdentifier, Long> deviceCrcs, ProgrammingJournal journal, DeviceMemoryImage image, TableReader reader) throws KnxException {
+        List<Table> written = new ArrayList<>();
+        for (Table table : job.tables) {
+            if (journal != null && journal.isChecksumSet(table.identifier)) {
+                continue;
+            }
+            long deviceCrc = deviceCrcs == null ? table.getCrc(systemTable) : deviceCrcs.get(table.identifier);
+            if (skipUnchangedTables && deviceCrc == table.newCrc) {
+                continue;
+            }
+            int tableAddress = table.getAddress(systemTable);
+            byte[] baseline = job.partial ? getPartialBaseline(table, deviceCrc, tableAddress, reader) : null;
+            image.put(tableAddress, table.newBytes, baseline);
+            written.add(table);
+        }
+        if (journal != null) {
+            for (int[] range : journal.getWritten()) {
+                image.markClean(range[0], range[1]);
+            }
+        }
+        return written;
+    }
+
+    /**
+     * Get the current table content to diff against in partial programming.
+     * The copy from the configuration is only trusted if its CRC matches the
+     * CRC the device reports. Otherwise the table is taken from the reader.
      *
-     * @param offset offset or index at which to start
-     * @param blocks blocks to write to memory at given offset
+     * @param table table to write
+     * @param deviceCrc table CRC reported by device
+     * @param tableAddress memory address of table
+     * @param reader reads table from device
+     * @return table content currently on device, or null if unknown
      * @throws KnxException
      */
-    private void writeDataBlocks(int offset, List<ByteArrayDiff.DataBlock> blocks) throws KnxException {
+    private byte[] getPartialBaseline(Table table, long deviceCrc, int tableAddress, TableReader reader) throws KnxException {
+        byte[] lastTable = table.lastBytes;
+        int length = table.newBytes.length;
+        if (lastTable.length == length && crc32(lastTable) == deviceCrc) {
+            return lastTable;
+        }
+        if (!partialAgainstDevice) {
+            return lastTable.length == length ? lastTable : null;
+        }
+        return reader.read(table, tableAddress);
+    }
 
-        for (ByteArrayDiff.DataBlock block : blocks) {
-            log.debug("Writing partial data: final offset={} length={}", offset + block.getIndex(), block.getData().length);
-            memoryWrite(offset + block.getIndex(), block.getData());
+    /**
+     * Open journal of device and discard it if it does not match the device
+     * or the tables to write.
+     *
+     * @param deviceCrcs table CRCs of device, or null to take them from the
+     * system table
+     * @return journal, or null if no journal directory or device address is
+     * set or it is not readable
+     */
+    private ProgrammingJournal openJournal(String individualAddress, Job job, SystemTable systemTable, Map<ChecksumIdentifier, Long> deviceCrcs) {
+        if (journalDirectory == null || individualAddress == null) {
+            return null;
+        }
+        ProgrammingJournal journal;
+        try {
+            journal = ProgrammingJournal.open(journalDirectory, individualAddress);
+        } catch (IOException ex) {
+            log.warn("Not able to read programming journal of " + individualAddress + ". Programming without.", ex);
+            return null;
+        }
+        if (!journal.isEmpty()) {
+            for (Table table : job.tables) {
+                long deviceCrc = deviceCrcs == null ? table.getCrc(systemTable) : deviceCrcs.get(table.identifier);
+                if (!journal.matches(table.identifier, table.getAddress(systemTable), deviceCrc, table.newCrc)) {
+                    log.info("Journal of {} does not match device or configuration ({}). Starting over.", individualAddress, table.identifier);
+                    journal.clear();
+                    return journal;
+                }
+            }
+            log.info("Resuming interrupted programming of {}", individualAddress);
+        }
+        return journal;
+    }
+
+    private void saveJournal(ProgrammingJournal journal) {
+        try {
+            journal.save();
+        } catch (IOException ex) {
+            log.warn("Not able to save programming journal", ex);
+        }
+    }
+
+    private static int getVerifyTelegramCount(List<ByteArrayDiff.DataBlock> blocks, Map<ChecksumIdentifier, Long> checksums) {
+        int count = getTelegramCount(blocks);
+        if (!checksums.isEmpty()) {
+            count += (int) Math.ceil((double) CRC_FIELDS_LENGTH / (double) ProgProtocol0x01.MEMORY_READWRITE_BYTES_MAX);
+        }
+        return count;
+    }
+
+    /**
+     * Read back written blocks and CRC fields. What the device did not store
+     * is written again and verified, up to {@link #VERIFY_REWRITES} times.
+     *
+     * @param blocks written blocks
+     * @param checksums written checksums
+     * @throws KnxException if device still does not store the data
+     */
+    private void verify(List<ByteArrayDiff.DataBlock> blocks, Map<ChecksumIdentifier, Long> checksums) throws KnxException {
+        fireProgressStatusMessage(getLangString("verifying"));
+        for (int rewrite = 0;; rewrite++) {
+            // stored content as baseline: only bytes that differ stay dirty
+            DeviceMemoryImage mismatches = new DeviceMemoryImage();
+            for (ByteArrayDiff.DataBlock block : blocks) {
+                mismatches.put(block.getIndex(), block.getData(), memoryRead(block.getIndex(), block.getData().length));
+            }
+            Map<ChecksumIdentifier, Long> wrongChecksums = new LinkedHashMap<>();
+            if (!checksums.isEmpty()) {
+                byte[] data = new byte[SystemTable.SIZE];
+                System.arraycopy(memoryRead(CRC_FIELDS_ADDRESS, CRC_FIELDS_LENGTH), 0, data, CRC_FIELDS_ADDRESS, CRC_FIELDS_LENGTH);
+                SystemTable stored = new SystemTable(data);
+                for (Map.Entry<ChecksumIdentifier, Long> entry : checksums.entrySet()) {
+                    if (getCrc(stored, entry.getKey()) != entry.getValue()) {
+                        wrongChecksums.put(entry.getKey(), entry.getValue());
+                    }
+                }
+            }
+
+            int wrongBytes = mismatches.getDirtyByteCount();
+            if (wrongBytes == 0 && wrongChecksums.isEmpty()) {
+                log.info("Verified {} block(s) and {} checksum(s)", blocks.size(), checksums.size());
+                return;
+            }
+            if (rewrite == VERIFY_REWRITES) {
+                throw new KnxException("Verification failed. Device did not store " + wrongBytes + " byte(s) and checksums " + wrongChecksums.keySet());
+            }
+            log.warn("Verification found {} byte(s) and checksums {} not stored. Writing them again.", wrongBytes, wrongChecksums.keySet());
+
+            blocks = getWrites(mismatches);
+            checksums = wrongChecksums;
+            setPlannedProgress(progressMaxSteps + getTelegramCount(blocks) + checksums.size() + getVerifyTelegramCount(blocks, checksums));
+            for (ByteArrayDiff.DataBlock block : blocks) {
+                memoryWrite(block.getIndex(), block.getData());
+            }
+            for (Map.Entry<ChecksumIdentifier, Long> entry : checksums.entrySet()) {
+                checksumSet(entry.getKey(), entry.getValue());
+            }
+        }
+    }
+
+    private static String getChecksumStatusKey(ChecksumIdentifier identifier) {
+        switch (identifier) {
+            case ADDRESS_TABLE:
+                return "writingAddressTableChecksum";
+            case ASSOCIATION_TABLE:
+                return "writingAssociationTableChecksum";
+            case COMMOBJECT_TABLE:
+                return "writingCommObjectTableChecksum";
+            case PARAMETER_TABLE:
+                return "writingParameterTableChecksum";
+            default:
+                return "writingSystemTableChecksum";
         }
     }
 
+    /**
+     * Get memory writes for all dirty bytes of the image, with as few messages
+     * as possible. Consecutive full messages are merged into one write, so
+     * they can be sent pipelined.
+     */
+    private List<ByteArrayDiff.DataBlock> getWrites(DeviceMemoryImage image) {
+        WritePlanner.WritePlan plan = image.getWritePlan(ProgProtocol0x01.MEMORY_READWRITE_BYTES_MAX, writePageSize);
+
+        List<ByteArrayDiff.DataBlock> writes = new ArrayList<>();
+        List<ByteArrayDiff.DataBlock> blocks = plan.getBlocks();
+        int i = 0;
+        while (i < blocks.size()) {
+            int start = i;
+            int address = blocks.get(i).getIndex();
+            int length = blocks.get(i).getData().length;
+            // merge while previous block is full and next one follows directly
+            while (i + 1 < blocks.size() && blocks.get(i).getData().length == ProgProtocol0x01.MEMORY_READWRITE_BYTES_MAX
+                    && blocks.get(i + 1).getIndex() == address + length) {
+                i++;
+                length += blocks.get(i).getData().length;
+            }
+            byte[] data = new byte[length];
+            for (int j = start; j <= i; j++) {
+                byte[] d = blocks.get(j).getData();
+                System.arraycopy(d, 0, data, blocks.get(j).getIndex() - address, d.length);
+            }
+            writes.add(new ByteArrayDiff.DataBlock(address, data));
+            i++;
+        }
+        return writes;
+    }
+
     /**
      * Send firmware over the bus, requires started prog-mode
      *
      * @param f firmwarefile to send to the device
+     * @return true, if firmware was sent, false if it was skipped, see
+     * {@link #setSkipIdenticalData(boolean)}
      */
-    public void sendFOTB(File f) throws DeviceManagementException {
-        sendData(f, ProgProtocol0x01.UPDATE_DATATYPE, ProgProtocol0x01.UPDATE_DATAID);
+    public boolean sendFOTB(File f) throws DeviceManagementException {
+        return sendData(f, ProgProtocol0x01.UPDATE_DATATYPE, ProgProtocol0x01.UPDATE_DATAID);
     }
 
     /**
@@ -346,48 +1219,146 @@ public class DeviceManagement {
      * @param f file to send to the device
      * @param dataType
      * @param dataId
+     * @return true, if data was sent, false if it was skipped, see
+     * {@link #setSkipIdenticalData(boolean)}
      */
-    public void sendData(File f, byte dataType, byte dataId) throws DeviceManagementException {
+    public boolean sendData(File f, byte dataType, byte dataId) throws DeviceManagementException {
         if (isProgramming) {
             fireIncreaseMaxSteps(2);
+            CancellationToken token = startCancellable();
             try {
-                CRC32 crc32 = new CRC32();
-                protocol.dataWritePrepare(dataType, dataId, f.length());
-                fireSingleStepDone();
-
-                FileInputStream fis = new FileInputStream(f);
-                BufferedInputStream bis = new BufferedInputStream(fis);
-
-                byte[] buffer = new byte[ProgProtocol0x01.DATA_WRITE_BYTES_MAX];
-
-                long length = f.length();
-
-                //----
-                int written = 0;
-
-                fireIncreaseMaxSteps((int) Math.ceil((double) length / (double) ProgProtocol0x01.DATA_WRITE_BYTES_MAX));
-
-                while (written != length) {
-
-                    int writeStep = (int) (length - written > ProgProtocol0x01.DATA_WRITE_BYTES_MAX ? ProgProtocol0x01.DATA_WRITE_BYTES_MAX : length - written);
-
-                    log.info("\twriting {} bytes. {} of {} bytes done so far", writeStep, written, length);
+                // device in prog mode, unknown while its address changes
+                String individualAddress = protocol.getTargetAddress();
+                DataLedger.Entry entry = null;
+                DataLedger ledger = null;
+                if (journalDirectory != null && individualAddress != null) {
+                    ledger = openLedger(individualAddress);
+                }
+                if (ledger != null && skipIdenticalData) {
+                    entry = DataLedger.Entry.of(f);
+                    if (isOnDevice(ledger, entry, dataType, dataId)) {
+                        log.info("\tdevice {} already has this data ({} bytes, sent {}). Skipping.", individualAddress, entry.size, new Date(ledger.getTimestamp(dataType, dataId)));
+                        fireDone(2);
+                        return false;
+                    }
+                }
 
-                    buffer = bis.readNBytes(writeStep);
-                    crc32.update(buffer, 0, writeStep);
-                    protocol.dataWrite(writeStep, buffer);
+                boolean compress = compressDataWrites;
+                if (compress && !getDeviceInfo().hasCapability(PropertyPageDeviceInfo.CAPABILITY_COMPRESSED_DATA_WRITE)) {
+                    log.info("\tdevice does not decompress data writes, sending raw");
+                    compress = false;
+                }
+                CRC32 dataCrc = new CRC32();
+                byte[] compressed = compress ? compress(f, dataCrc) : null;
+                long length = compressed != null ? compressed.length : f.length();
+                int messages = (int) Math.ceil((double) length / (double) ProgProtocol0x01.DATA_WRITE_BYTES_MAX);
+                fireIncreaseMaxSteps(messages);
+
+                DataTransferCheckpoint checkpoint = openCheckpoint(individualAddress, dataType, dataId);
+                if (ledger != null) {
+                    // data on device is undefined as soon as the transfer starts
+                    ledger.remove(dataType, dataId);
+                    saveLedger(ledger);
+                }
 
-                    written += writeStep;
+                CRC32 crc32 = new CRC32();
+                long offset = 0;
+                if (checkpoint != null && checkpoint.getLength() == length && checkpoint.getOffset() > 0) {
+                    if (compressed == null && getDeviceInfo().hasCapability(PropertyPageDeviceInfo.CAPABILITY_DATA_WRITE_RESUME)) {
+                        offset = checkpoint.getOffset();
+                    } else {
+                        log.info("\tprevious transfer to {} stopped after {} of {} bytes. Device cannot resume, restarting.", individualAddress, checkpoint.getOffset(), length);
+                    }
+                }
+                // bytes whose messages are reported as done
+                long reported = 0;
+                boolean complete = false;
+                while (!complete) {
+                    crc32.reset();
+                    if (offset > 0) {
+                        // the finishing CRC covers the part the device already has
+                        updateCrc(crc32, f, compressed, offset);
+                        if ((checkpoint == null || checkpoint.matches(length, crc32.getValue())) && protocol.dataWritePrepareResume(dataType, dataId, length, offset)) {
+                            log.info("\tresuming transfer to {} after {} of {} bytes", individualAddress, offset, length);
+                            fireDone((int) ((offset - reported) / ProgProtocol0x01.DATA_WRITE_BYTES_MAX));
+                            reported = offset;
+                        } else {
+                            log.info("\tdevice {} cannot resume after {} of {} bytes, restarting", individualAddress, offset, length);
+                            fireIncreaseMaxSteps((int) (reported / ProgProtocol0x01.DATA_WRITE_BYTES_MAX));
+                            reported = 0;
+                            offset = 0;
+                            crc32.reset();
+                        }
+                    }
+                    if (offset == 0) {
+                        if (compressed != null) {
+                            protocol.dataWritePrepareCompressed(dataType, dataId, length, f.length());
+                        } else {
+                            protocol.dataWritePrepare(dataType, dataId, length);
+                        }
+                        if (checkpoint != null) {
+                            checkpoint.begin(length);
+                            saveCheckpoint(checkpoint);
+                        }
+                    }
                     fireSingleStepDone();
+
+                    log.info("\twriting {} bytes with window size {}", length - offset, protocol.getDataWriteWindowSize());
+                    int[] acknowledged = {0};
+                    long acked;
+                    try (InputStream in = openData(f, compressed)) {
+                        skipFully(in, offset);
+                        complete = protocol.dataWrite(in, length - offset, crc32, i -> {
+                            acknowledged[0] += i;
+                            fireDone(i);
+                        });
+                    } finally {
+                        // acks arrive in order, the device has at least this part
+                        acked = offset + Math.min(length - offset, (long) acknowledged[0] * ProgProtocol0x01.DATA_WRITE_BYTES_MAX);
+                        reported = acked;
+                        if (checkpoint != null && !complete) {
+                            // saved once per attempt
+                            CRC32 ackedCrc = new CRC32();
+                            updateCrc(ackedCrc, f, compressed, acked);
+                            checkpoint.acknowledged(acked, ackedCrc.getValue());
+                            saveCheckpoint(checkpoint);
+                        }
+                    }
+                    if (!complete) {
+                        // device may have appended a message without acking it, so
+                        // continue after the acknowledged part, the device drops the rest
+                        if (compressed == null && acked > 0 && getDeviceInfo().hasCapability(PropertyPageDeviceInfo.CAPABILITY_DATA_WRITE_RESUME)) {
+                            log.info("\tcontinuing transfer after {} of {} bytes", acked, length);
+                            fireIncreaseMaxSteps(1);
+                            offset = acked;
+                        } else {
+                            log.info("\trestarting transfer after {} of {} bytes", acked, length);
+                            fireIncreaseMaxSteps(1 + (int) (reported / ProgProtocol0x01.DATA_WRITE_BYTES_MAX));
+                            reported = 0;
+                            offset = 0;
+                        }
+                    }
                 }
-                // ----
 
-                fis.close();
+                if (compressed != null) {
+                    // device checks the data after decompression
+                    crc32 = dataCrc;
+                }
                 log.info("\tfinishing with crc32: {}", crc32.getValue());
                 protocol.dataWriteFinish(crc32);
                 fireSingleStepDone();
+                if (checkpoint != null) {
+                    checkpoint.delete();
+                }
+                if (entry != null) {
+                    ledger.put(dataType, dataId, entry);
+                    saveLedger(ledger);
+                }
+                return true;
             } catch (KnxException | IOException ex) {
                 throw new DeviceManagementException("writing data failed", ex);
+            } finally {
+                endCancellable(token);
             }
         } else {
             throw new IllegalStateException("Device is not set to prog mode via API");
@@ -395,43 +1366,252 @@ public class DeviceManagement {
     }
 
     /**
-     * read data from device over the bus, requires started prog-mode
+     * Compress file for a data write
+     *
+     * @param crc32 updated with the uncompressed data
+     * @return compressed data, or null if it is not smaller than the file
+     */
+    private byte[] compress(File f, CRC32 crc32) throws IOException {
+        byte[] data = Files.readAllBytes(f.toPath());
+        byte[] compressed = Lzss.compress(data);
+        if (compressed.length >= data.length) {
+            log.info("\tdata does not compress ({} to {} bytes), sending it raw", data.length, compressed.length);
+            return null;
+        }
+        log.info("\tcompressed {} to {} bytes", data.length, compressed.length);
+        crc32.update(data);
+        return compressed;
+    }
+
+    /**
+     * Open checkpoint of a data transfer
+     *
+     * @param individualAddress device, or null
+     * @return checkpoint, or null if there is no journal directory or device
+     * address, or the checkpoint is not readable
+     */
+    private DataTransferCheckpoint openCheckpoint(String individualAddress, byte dataType, byte dataId) {
+        if (journalDirectory == null || individualAddress == null) {
+            return null;
+        }
+        try {
+            return DataTransferCheckpoint.open(journalDirectory, individualAddress, dataType, dataId);
+        } catch (IOException ex) {
+            log.warn("Not able to read data transfer checkpoint of " + individualAddress + ". Sending without.", ex);
+            return null;
+        }
+    }
+
+    /**
+     * @param compressed compressed data to send instead of the file, or null
+     * @return stream of data to send
+     */
+    private static InputStream openData(File f, byte[] compressed) throws IOException {
+        return compressed != null ? new ByteArrayInputStream(compressed) : new BufferedInputStream(new FileInputStream(f));
+    }
+
+    /**
+     * Update CRC with the first bytes of the data to send
+     *
+     * @param compressed compressed data to send instead of the file, or null
+     * @param length number of bytes
+     */
+    private static void updateCrc(CRC32 crc32, File f, byte[] compressed, long length) throws IOException {
+        try (InputStream in = new CheckedInputStream(openData(f, compressed), crc32)) {
+            skipFully(in, length);
+        }
+    }
+
+    /**
+     * Read and drop bytes, a {@link CheckedInputStream} still sees them
+     */
+    private static void skipFully(InputStream in, long length) throws IOException {
+        byte[] buffer = new byte[4096];
+        while (length > 0) {
+            int read = in.read(buffer, 0, (int) Math.min(buffer.length, length));
+            if (read < 0) {
+                throw new EOFException("Unexpected end of data, " + length + " bytes missing");
+            }
+            length -= read;
+        }
+    }
+
+    /**
+     * @return ledger of device, or null if it is not readable
+     */
+    private DataLedger openLedger(String individualAddress) {
+        try {
+            return DataLedger.open(journalDirectory, individualAddress);
+        } catch (IOException ex) {
+            log.warn("Not able to read data ledger of " + individualAddress + ". Sending without.", ex);
+            return null;
+        }
+    }
+
+    private void saveLedger(DataLedger ledger) {
+        try {
+            ledger.save();
+        } catch (IOException ex) {
+            log.warn("Not able to save data ledger", ex);
+        }
+    }
+
+    /**
+     * Check if the ledger states that the data is already on the device and,
+     * if enabled, confirm it by reading the data back. Firmware cannot be
+     * read back, the ledger is trusted then.
+     *
+     * @return true, if data does not need to be sent
+     */
+    private boolean isOnDevice(DataLedger ledger, DataLedger.Entry entry, byte dataType, byte dataId) {
+        if (!entry.sameAs(ledger.get(dataType, dataId))) {
+            return false;
+        }
+        if (!confirmIdenticalData || dataType == ProgProtocol0x01.UPDATE_DATATYPE) {
+            return true;
+        }
+        CRC32 crc32 = new CRC32();
+        try {
+            long size = readData(crc32::update, dataType, dataId);
+            return size == entry.size && crc32.getValue() == entry.crc;
+        } catch (DeviceManagementException ex) {
+            log.info("\tnot able to read back data to confirm ledger. Sending it.", ex);
+            return false;
+        }
+    }
+
+    private void saveCheckpoint(DataTransferCheckpoint checkpoint) {
+        try {
+            checkpoint.save();
+        } catch (IOException ex) {
+            log.warn("Not able to save data transfer checkpoint", ex);
+        }
+    }
+
+    /**
+     * read data from device over the bus, requires started prog-mode. The
+     * data is received into a temporary file, which replaces the given file
+     * only if the CRC reported by the device matches.
      *
      * @param f file to write received data to
+     * @throws DeviceManagementException if reading fails or CRC mismatches
      */
     public void readData(File f, byte dataType, byte dataId) throws DeviceManagementException {
+        if (!isProgramming) {
+            throw new IllegalStateException("Device is not set to prog mode via API");
+        }
+        Path tmp = Paths.get(f.getPath() + ".tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                readData(channel, dataType, dataId);
+            }
+            Files.move(tmp, f.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException ex) {
+            throw new DeviceManagementException("reading data failed", ex);
+        } finally {
+            try {
+                Files.deleteIfExists(tmp);
+            } catch (IOException ex) {
+                log.warn("Not able to delete " + tmp, ex);
+            }
+        }
+    }
+
+    /**
+     * read data from device over the bus into a buffer, requires started
+     * prog-mode
+     *
+     * @param dst buffer to put received data into
+     * @return number of bytes read
+     * @throws DeviceManagementException if reading fails or CRC mismatches
+     * @throws java.nio.BufferOverflowException if data does not fit into the
+     * buffer
+     */
+    public long readData(ByteBuffer dst, byte dataType, byte dataId) throws DeviceManagementException {
+        return readData(dst::put, dataType, dataId);
+    }
+
+    /**
+     * read data from device over the bus chunk by chunk, requires started
+     * prog-mode. The data read so far is not valid before this call returned,
+     * as the CRC is checked at the end.
+     *
+     * @param consumer gets each received chunk. The buffer is only valid
+     * during the call.
+     * @return number of bytes read
+     * @throws DeviceManagementException if reading fails or CRC mismatches
+     */
+    public long readData(Consumer<ByteBuffer> consumer, byte dataType, byte dataId) throws DeviceManagementException {
+        return readData(new WritableByteChannel() {
+
+            @Override
+            public int write(ByteBuffer src) {
+                int length = src.remaining();
+                consumer.accept(src.asReadOnlyBuffer());
+                src.position(src.limit());
+                return length;
+            }
+
+            @Override
+            public boolean isOpen() {
+                return true;
+            }
+
+            @Override
+            public void close() {
+            }
+        }, dataType, dataId);
+    }
+
+    /**
+     * read data from device over the bus into a channel, requires started
+     * prog-mode. The data written so far is not valid before this call
+     * returned, as the CRC is checked at the end.
+     *
+     * @param channel channel to write received data to, is not closed
+     * @return number of bytes read
+     * @throws DeviceManagementException if reading fails or CRC mismatches
+     */
+    public long readData(WritableByteChannel channel, byte dataType, byte dataId) throws DeviceManagementException {
         if (isProgramming) {
             fireIncreaseMaxSteps(2);
+            CancellationToken token = startCancellable();
             try {
                 DataReadResponse dataReadResponse = protocol.startDataRead(dataType, dataId);
+                fireSingleStepDone();
 
                 log.debug("got response: {}", dataReadResponse.toString());
 
-                FileOutputStream fos = new FileOutputStream(f);
-                BufferedOutputStream bos = new BufferedOutputStream(fos);
-
                 long size = dataReadResponse.getSize();
                 CRC32 crc32 = new CRC32();
 
                 int dataMsgCount = (int) Helper.roundUp(size, ProgProtocol0x01.DATA_READ_BYTES_MAX);
+                fireIncreaseMaxSteps(dataMsgCount);
                 log.info("will receive {} read data messages based on {} bytes of data", dataMsgCount, size);
+                ByteBuffer buffer = ByteBuffer.allocate(ProgProtocol0x01.DATA_READ_BYTES_MAX);
                 for (int i = 0; i < dataMsgCount; i++) {
-                    byte[] data = protocol.dataRead();
-                    log.debug("Got data #{}: {}", Helper.bytesToHex(data, true));
-                    crc32.update(data);
-                    bos.write(data);
+                    buffer.clear();
+                    protocol.dataRead(buffer);
+                    buffer.flip();
+                    crc32.update(buffer);
+                    buffer.rewind();
+                    while (buffer.hasRemaining()) {
+                        channel.write(buffer);
+                    }
+                    fireSingleStepDone();
                 }
-                bos.close();
                 log.debug("data read done");
                 dataReadResponse = protocol.dataReadFinalize();
-                if (crc32.getValue() == dataReadResponse.getCrc32()) {
-                    log.debug("CRC match!");
-                } else {
-                    log.error("CRC mismatch! via protocol: {} self-calculated: {}", dataReadResponse.getCrc32(), crc32.getValue());
+                fireSingleStepDone();
+                if (crc32.getValue() != dataReadResponse.getCrc32()) {
+                    throw new DeviceManagementException("CRC mismatch! via protocol: " + dataReadResponse.getCrc32() + " self-calculated: " + crc32.getValue());
                 }
-
+                log.debug("CRC match!");
+                return size;
             } catch (KnxException | IOException ex) {
                 throw new DeviceManagementException("reading data failed", ex);
+            } finally {
+                endCancellable(token);
             }
         } else {
             throw new IllegalStateException("Device is not set to prog mode via API");
@@ -442,6 +1622,14 @@ public class DeviceManagement {
         if (isProgramming) {
             try {
                 protocol.dataRemove(dataType, dataId);
+                String individualAddress = protocol.getTargetAddress();
+                if (journalDirectory != null && individualAddress != null) {
+                    DataLedger ledger = openLedger(individualAddress);
+                    if (ledger != null && ledger.get(dataType, dataId) != null) {
+                        ledger.remove(dataType, dataId);
+                        saveLedger(ledger);
+                    }
+                }
             } catch (KnxException ex) {
                 throw new DeviceManagementException("removing data failed", ex);
             }
@@ -475,26 +1663,35 @@ public class DeviceManagement {
      */
     void startProgMode(String individualAddress, int manufacturerId, short deviceId, short revision, short systemType) throws KnxException, DeviceManagementException {
 
-        progressMaxSteps = 0;
-        progressCurrent = 0;
+        if (!progressPlanned) {
+            progressMaxSteps = 0;
+            progressCurrent = 0;
+        }
 
         if (isProgramming) {
             throw new IllegalStateException("Already in programming mode. Please call stopProgramming() first.");
         }
+        protocol.setTargetAddress(null);
+        deviceInfo = null;
 
         if (individualAddress != null && !individualAddress.isEmpty() && Helper.checkValidPa(individualAddress)) {
 
             log.debug("Program with existing IA");
-            List<String> devices = protocol.programmingModeRead();
+            // one answer is already enough to fail. No quiet period, a late
+            // answer has to be seen as well
+            List<String> devices = protocol.programmingModeRead(1, 0, null);
             if (!devices.isEmpty()) {
                 throw new KnxException("Programming via IA. There are devices in prog-mode. Aborting.");
             }
             fireSingleStepDone();
 
+            // from now on, only accept answers of this device
+            protocol.setTargetAddress(individualAddress);
             protocol.programmingModeWrite(individualAddress, true);
             fireSingleStepDone();
 
-            devices = protocol.programmingModeRead();
+            // a second answer is already enough to fail
+            devices = protocol.programmingModeRead(2, 0, null);
             fireSingleStepDone();
 
             if (devices.size() != 1) {
@@ -529,13 +1726,15 @@ public class DeviceManagement {
                 );
             }
             log.debug("Got device info: {}", ppdi);
+            deviceInfo = ppdi;
         }
         isProgramming = true;
     }
 
     private void ensureProgButtonOneDevice() throws KnxException {
         log.debug("Program with help of ProgButton");
-        List<String> devices = protocol.programmingModeRead();
+        // a second answer is already enough to fail, wait for late ones otherwise
+        List<String> devices = protocol.programmingModeRead(2, 0, null);
         fireSingleStepDone();
 
         if (devices.isEmpty()) {
@@ -544,6 +1743,8 @@ public class DeviceManagement {
             throw new KnxException("Programming with Button. More than one device in prog-mode. aborting.");
         } else {
             log.debug("One device with prog button found.");
+            // from now on, only accept answers of this device
+            protocol.setTargetAddress(devices.get(0));
         }
     }
 
@@ -555,6 +1756,7 @@ public class DeviceManagement {
         protocol.programmingModeWrite(individualAddress, false);
         fireSingleStepDone();
         isProgramming = false;
+        deviceInfo = null;
     }
     
     private void checksumSet(ChecksumIdentifier identifier, long crc) throws KnxException {
@@ -562,30 +1764,44 @@ public class DeviceManagement {
             throw new IllegalStateException("Not in programming-state- Call startProgramming() first.");
         }
         protocol.checksumSet(identifier, crc);
+        if (memoryCache != null) {
+            // checksums are stored in the system table
+            memoryCache.invalidate(SystemTable.SYSTEMTABLE_ADDRESS, SystemTable.SIZE);
+        }
         fireIncreaseMaxSteps(1);
         fireSingleStepDone();
     }
 
     private void memoryWrite(int addr, byte[] data) throws KnxException {
+        memoryWrite(addr, data, null);
+    }
+
+    /**
+     * Write memory and record each acknowledged range in the journal
+     *
+     * @param journal journal, or null
+     */
+    private void memoryWrite(int addr, byte[] data, ProgrammingJournal journal) throws KnxException {
         if (!isProgramming) {
             throw new IllegalStateException("Not in programming-state- Call startProgramming() first.");
         }
         log.debug("Writing {} bytes of data to addr {}. data: {}", data.length, String.format("0x%02x", addr), Helper.bytesToHex(data, true));
 
-        int written = 0;
-
-        fireIncreaseMaxSteps((int) Math.ceil((double) data.length / (double) ProgProtocol0x01.MEMORY_READWRITE_BYTES_MAX));
-        while (written != data.length) {
-
-            int writeStep = (data.length - written > ProgProtocol0x01.MEMORY_READWRITE_BYTES_MAX ? ProgProtocol0x01.MEMORY_READWRITE_BYTES_MAX : data.length - written);
-
-            log.debug("\twrite {} bytes to index {}", writeStep, String.format("0x%02x", addr));
-            protocol.memoryWrite(addr, Arrays.copyOfRange(data, written, written + writeStep));
-
-            addr += writeStep; // increment index for reading next block of 1..9 bytes
-            written += writeStep;
-            fireSingleStepDone();
+        if (memoryCache != null) {
+            memoryCache.invalidate(addr, data.length);
         }
+        fireIncreaseMaxSteps((int) Math.ceil((double) data.length / (double) ProgProtocol0x01.MEMORY_READWRITE_BYTES_MAX));
+        int[] acknowledged = {0};
+        protocol.memoryWrite(addr, data, frames -> {
+            fireDone(frames);
+            if (journal != null) {
+                // acks arrive in order, so the acknowledged part is always a prefix
+                int offset = acknowledged[0];
+                acknowledged[0] = Math.min(data.length, offset + frames * ProgProtocol0x01.MEMORY_READWRITE_BYTES_MAX);
+                journal.written(addr + offset, acknowledged[0] - offset);
+                saveJournal(journal);
+            }
+        });
         log.debug("Done writing.");
     }
 
@@ -593,28 +1809,36 @@ public class DeviceManagement {
         if (!isProgramming) {
             throw new IllegalStateException("Not in programming-state- Call startProgramming() first.");
         }
+        if (memoryCache != null) {
+            byte[] cached = memoryCache.get(addr, lenght);
+            if (cached != null) {
+                log.debug("Reading {} bytes beginning from addr {} from session cache", lenght, String.format("0x%02x", addr));
+                return cached;
+            }
+        }
         log.debug("Reading {} bytes beginning from addr {}", lenght, String.format("0x%02x", addr));
 
-        byte[] result = new byte[lenght];
-        int read = 0;
         fireIncreaseMaxSteps((int) Math.ceil((double) lenght / (double) ProgProtocol0x01.MEMORY_READWRITE_BYTES_MAX));
-
-        while (lenght != 0) {
-            int readStep = (lenght > ProgProtocol0x01.MEMORY_READWRITE_BYTES_MAX ? ProgProtocol0x01.MEMORY_READWRITE_BYTES_MAX : lenght);
-            lenght -= readStep;
-            log.debug("\tRead {} bytes from addr {}", readStep, String.format("0x%02x", addr));
-            byte[] data = protocol.memoryRead(addr, readStep);
-
-            System.arraycopy(data, 0, result, read, readStep);
-
-            addr += readStep; // increment index for reading next block of 1..9 bytes
-            read += readStep;
-            fireSingleStepDone();
+        byte[] result = protocol.memoryRead(addr, lenght, this::fireDone);
+        if (memoryCache != null) {
+            memoryCache.put(addr, result);
         }
         log.debug("Done reading. data={}", Helper.bytesToHex(result, true));
         return result;
     }
 
+    /**
+     * @return device info of the device in prog mode, read once per prog mode
+     */
+    private PropertyPageDeviceInfo getDeviceInfo() throws DeviceManagementException {
+        if (deviceInfo == null) {
+            fireIncreaseMaxSteps(1);
+            deviceInfo = readDeviceInfo(protocol.getTargetAddress());
+            fireSingleStepDone();
+        }
+        return deviceInfo;
+    }
+
     private PropertyPageDeviceInfo readDeviceInfo(String individualAddress) throws DeviceManagementException {
         try {
             byte[] propertyPageRead = protocol.propertyPageRead(individualAddress, PropertyPageDeviceInfo.PROPERTY_PAGE_NUM);
@@ -630,10 +1854,35 @@ public class DeviceManagement {
      * Non-Prog-Stuff
      * ************************************/
     private void fireIncreaseMaxSteps(int i) {
+        if (progressPlanned) {
+            // total is known from the plan
+            return;
+        }
         progressMaxSteps += i;
         fireProgressUpdate(progressCurrent, progressMaxSteps);
     }
 
+    /**
+     * Start progress with the total number of steps of a plan
+     */
+    private void startPlannedProgress(int steps) {
+        progressPlanned = true;
+        progressCurrent = 0;
+        progressMaxSteps = steps;
+        fireProgressUpdate(progressCurrent, progressMaxSteps);
+    }
+
+    /**
+     * Correct total number of steps, if it differs from the plan
+     */
+    private void setPlannedProgress(int steps) {
+        if (steps != progressMaxSteps) {
+            log.debug("Correcting progress from {} to {} steps", progressMaxSteps, steps);
+            progressMaxSteps = steps;
+            fireProgressUpdate(progressCurrent, progressMaxSteps);
+        }
+    }
+
     private void fireSingleStepDone() {
         fireDone(1);
     }
@@ -667,23 +1916,38 @@ public class DeviceManagement {
     }
 
     private void fireProgressStatusMessage(String statusMsg) {
-        for (ProgramProgressListener listener : listeners) {
-            listener.onStatusMessage(statusMsg);
-        }
+        progressDispatcher.status(statusMsg);
     }
 
     private void fireProgressUpdate(int currentStep, int steps) {
-        for (ProgramProgressListener listener : listeners) {
-            listener.onProgressUpdate(currentStep, steps);
-        }
+        progressDispatcher.progress(currentStep, steps);
     }
 
+    /**
+     * Add listener. Listeners are called on the progress executor, never on
+     * the programming thread. Progress updates are coalesced, status messages
+     * are all delivered.
+     *
+     * @param listener listener to add
+     * @see #setProgressExecutor(java.util.concurrent.Executor)
+     */
     public void addProgressListener(ProgramProgressListener listener) {
-        listeners.add(listener);
+        progressDispatcher.addListener(listener);
     }
 
     public void removeProgressListener(ProgramProgressListener listener) {
-        listeners.remove(listener);
+        progressDispatcher.removeListener(listener);
+    }
+
+    /**
+     * Set executor progress listeners are called on, f.i.
+     * <code>SwingUtilities::invokeLater</code>. Events are still delivered
+     * one after another.
+     *
+     * @param executor executor, or null for a shared background thread pool
+     */
+    public void setProgressExecutor(Executor executor) {
+        progressDispatcher.setExecutor(executor);
     }
 
     private void checkAbort() throws DeviceManagementException {
@@ -694,8 +1958,20 @@ public class DeviceManagement {
     }
 
     public void unload(boolean factoryreset, boolean ia, boolean co, boolean params, boolean datastorage) throws KnxException {
-        ensureProgButtonOneDevice();
-        protocol.unload(factoryreset, ia, co, params, datastorage);
+        CancellationToken token = startCancellable();
+        try {
+            ensureProgButtonOneDevice();
+            protocol.unload(factoryreset, ia, co, params, datastorage);
+            if ((factoryreset || datastorage) && journalDirectory != null) {
+                // data sent before is gone
+                DataLedger ledger = openLedger(protocol.getTargetAddress());
+                if (ledger != null) {
+                    ledger.delete();
+                }
+            }
+        } finally {
+            endCancellable(token);
+        }
     }
 
     public void restart(String individualAddress) throws KnxException {
@@ -741,6 +2017,8 @@ public class DeviceManagement {
         if (systemTable.hasChanged()) {
             log.debug("Writing table");
             memoryWrite(SystemTable.SYSTEMTABLE_WRITE_ADDRESS, systemTable.getWriteData());
+            // the device may answer with its old or new address until restarted
+            protocol.setTargetAddress(null);
         }
 
         stopProgMode(newIndividualAddress);
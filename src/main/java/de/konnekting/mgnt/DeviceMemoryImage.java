@@ -0,0 +1,155 @@
+/*
+ * Copyright (C) 2020 Alexander Christian <alex(at)root1.de>. All rights reserved.
+ *
+ * This file is part of KONNEKTING DeviceConfig.
+ *
+ *   KONNEKTING DeviceConfig is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   KONNEKTING DeviceConfig is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with KONNEKTING DeviceConfig.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.konnekting.mgnt;
+
+import de.konnekting.deviceconfig.utils.ByteArrayDiff;
+import de.konnekting.deviceconfig.utils.WritePlanner;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Sparse image of the device's memory address space. Tables are placed at
+ * their memory address, together with the bytes that have to be written.
+ * Tables that are adjacent in memory are planned as one block, so a write
+ * message can span a table boundary and no table ends with its own partially
+ * filled message.
+ *
+ * @author achristian
+ */
+public class DeviceMemoryImage {
+
+    private static class Segment {
+
+        final int address;
+        final byte[] data;
+        final boolean[] dirty;
+
+        Segment(int address, byte[] data, boolean[] dirty) {
+            this.address = address;
+            this.data = data;
+            this.dirty = dirty;
+        }
+
+        int end() {
+            return address + data.length;
+        }
+    }
+
+    private final TreeMap<Integer, Segment> segments = new TreeMap<>();
+
+    /**
+     * Place data in the image
+     *
+     * @param address memory address of data
+     * @param data new content
+     * @param baseline content currently on device, same size as data, or null
+     * if unknown. Only bytes differing from the baseline are dirty. If null,
+     * all bytes are dirty.
+     */
+    public void put(int address, byte[] data, byte[] baseline) {
+        if (baseline != null && baseline.length != data.length) {
+            throw new IllegalArgumentException("baseline must have same size as data. data=" + data.length + " baseline=" + baseline.length);
+        }
+        Map.Entry<Integer, Segment> before = segments.floorEntry(address);
+        Map.Entry<Integer, Segment> after = segments.ceilingEntry(address);
+        if ((before != null && before.getValue().end() > address) || (after != null && after.getKey() < address + data.length)) {
+            throw new IllegalArgumentException(String.format("Data at 0x%04x with length %d overlaps data already in image", address, data.length));
+        }
+        boolean[] dirty = new boolean[data.length];
+        for (int i = 0; i < data.length; i++) {
+            dirty[i] = baseline == null || baseline[i] != data[i];
+        }
+        segments.put(address, new Segment(address, data, dirty));
+    }
+
+    /**
+     * Mark bytes as already written, f.i. because the device acknowledged
+     * them in an earlier, interrupted run. Bytes outside of the image are
+     * ignored.
+     *
+     * @param address memory address of first byte
+     * @param length number of bytes
+     */
+    public void markClean(int address, int length) {
+        for (Segment segment : segments.values()) {
+            int from = Math.max(address, segment.address);
+            int to = Math.min(address + length, segment.end());
+            for (int i = from; i < to; i++) {
+                segment.dirty[i - segment.address] = false;
+            }
+        }
+    }
+
+    /**
+     * @return number of bytes that have to be written
+     */
+    public int getDirtyByteCount() {
+        int count = 0;
+        for (Segment segment : segments.values()) {
+            for (boolean d : segment.dirty) {
+                if (d) {
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Plan the writes of all dirty bytes. Segments that are adjacent in memory
+     * are planned together.
+     *
+     * @param maxChunk max. number of bytes per write message
+     * @param pageSize page size in bytes, 0 for no alignment
+     * @return plan, the index of each block is its memory address
+     */
+    public WritePlanner.WritePlan getWritePlan(int maxChunk, int pageSize) {
+        List<ByteArrayDiff.DataBlock> blocks = new ArrayList<>();
+        List<Segment> run = new ArrayList<>();
+        for (Segment segment : segments.values()) {
+            if (!run.isEmpty() && run.get(run.size() - 1).end() != segment.address) {
+                planRun(run, maxChunk, pageSize, blocks);
+                run.clear();
+            }
+            run.add(segment);
+        }
+        planRun(run, maxChunk, pageSize, blocks);
+        return new WritePlanner.WritePlan(blocks);
+    }
+
+    private static void planRun(List<Segment> run, int maxChunk, int pageSize, List<ByteArrayDiff.DataBlock> blocks) {
+        if (run.isEmpty()) {
+            return;
+        }
+        int address = run.get(0).address;
+        int length = run.get(run.size() - 1).end() - address;
+        byte[] data = new byte[length];
+        boolean[] dirty = new boolean[length];
+        for (Segment segment : run) {
+            System.arraycopy(segment.data, 0, data, segment.address - address, segment.data.length);
+            System.arraycopy(segment.dirty, 0, dirty, segment.address - address, segment.dirty.length);
+        }
+        for (ByteArrayDiff.DataBlock block : WritePlanner.plan(data, dirty, maxChunk, address, pageSize).getBlocks()) {
+            blocks.add(new ByteArrayDiff.DataBlock(address + block.getIndex(), block.getData()));
+        }
+    }
+
+}
@@ -0,0 +1,65 @@
+/*
+ * Copyright (C) 2020 Alexander Christian <alex(at)root1.de>. All rights reserved.
+ *
+ * This file is part of KONNEKTING DeviceConfig.
+ *
+ *   KONNEKTING DeviceConfig is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   KONNEKTING DeviceConfig is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with KONNEKTING DeviceConfig.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.konnekting.mgnt;
+
+import java.util.BitSet;
+
+/**
+ * Device memory read during a {@link ProgrammingSession}. Covers the whole
+ * 16 bit address space of the protocol. Written ranges are invalidated, so
+ * they are read from the device again.
+ *
+ * @author achristian
+ */
+class MemoryCache {
+
+    private static final int SIZE = 0x10000;
+
+    private final byte[] memory = new byte[SIZE];
+    private final BitSet valid = new BitSet(SIZE);
+
+    /**
+     * @return true, if all bytes of the range are cached
+     */
+    boolean contains(int address, int length) {
+        return address >= 0 && address + length <= SIZE && valid.nextClearBit(address) >= address + length;
+    }
+
+    /**
+     * @return copy of cached range, or null if not all bytes are cached
+     */
+    byte[] get(int address, int length) {
+        if (!contains(address, length)) {
+            return null;
+        }
+        byte[] data = new byte[length];
+        System.arraycopy(memory, address, data, 0, length);
+        return data;
+    }
+
+    void put(int address, byte[] data) {
+        System.arraycopy(data, 0, memory, address, data.length);
+        valid.set(address, address + data.length);
+    }
+
+    void invalidate(int address, int length) {
+        valid.clear(Math.max(address, 0), Math.min(address + length, SIZE));
+    }
+
+}
@@ -0,0 +1,142 @@
+/*
+ * Copyright (C) 2020 Alexander Christian <alex(at)root1.de>. All rights reserved.
+ *
+ * This file is part of KONNEKTING DeviceConfig.
+ *
+ *   KONNEKTING DeviceConfig is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   KONNEKTING DeviceConfig is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with KONNEKTING DeviceConfig.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.konnekting.mgnt;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Journal of an interrupted programming job of one device. Records which
+ * table content is being written, which memory ranges the device has
+ * acknowledged and which checksums are set. It is saved after each step and
+ * deleted when programming succeeded, so a following attempt only sends what
+ * is missing.
+ * <p>
+ * A table entry is only valid as long as the device still reports the CRC it
+ * had when writing started, or the new CRC once its checksum is set.
+ *
+ * @author achristian
+ */
+class ProgrammingJournal extends PropertiesStore {
+
+    private static final String WRITTEN = "written";
+
+    private ProgrammingJournal(File file) {
+        super(file, "KONNEKTING programming journal");
+    }
+
+    /**
+     * Load journal of device, or create an empty one
+     *
+     * @param directory directory of journals
+     * @param individualAddress device
+     * @return journal
+     * @throws IOException if existing journal cannot be read
+     */
+    static ProgrammingJournal open(File directory, String individualAddress) throws IOException {
+        ProgrammingJournal journal = new ProgrammingJournal(new File(directory, individualAddress.replace('.', '_') + ".journal"));
+        journal.load();
+        return journal;
+    }
+
+    /**
+     * Record start of writing a table
+     *
+     * @param identifier table
+     * @param address memory address of table
+     * @param deviceCrc CRC the device reports before writing
+     * @param newCrc CRC of the content being written
+     */
+    void begin(ChecksumIdentifier identifier, int address, long deviceCrc, long newCrc) {
+        if (properties.getProperty(key(identifier, "crc")) != null) {
+            return;
+        }
+        properties.setProperty(key(identifier, "address"), Integer.toString(address));
+        properties.setProperty(key(identifier, "deviceCrc"), Long.toString(deviceCrc));
+        properties.setProperty(key(identifier, "crc"), Long.toString(newCrc));
+    }
+
+    /**
+     * Check if table entry fits to the device and the content to write. A
+     * table without entry always fits.
+     *
+     * @param identifier table
+     * @param address memory address of table on device
+     * @param deviceCrc CRC currently reported by device
+     * @param newCrc CRC of the content to write
+     * @return true, if journal can be used for this table
+     */
+    boolean matches(ChecksumIdentifier identifier, int address, long deviceCrc, long newCrc) {
+        String crc = properties.getProperty(key(identifier, "crc"));
+        if (crc == null) {
+            return true;
+        }
+        if (Long.parseLong(crc) != newCrc || Integer.parseInt(properties.getProperty(key(identifier, "address"))) != address) {
+            return false;
+        }
+        long expectedCrc = isChecksumSet(identifier) ? newCrc : Long.parseLong(properties.getProperty(key(identifier, "deviceCrc")));
+        return deviceCrc == expectedCrc;
+    }
+
+    /**
+     * Record range acknowledged by the device
+     *
+     * @param address memory address
+     * @param length number of bytes
+     */
+    void written(int address, int length) {
+        String written = properties.getProperty(WRITTEN);
+        String range = address + ":" + length;
+        properties.setProperty(WRITTEN, written == null ? range : written + "," + range);
+    }
+
+    /**
+     * @return acknowledged ranges, each as {address, length}
+     */
+    List<int[]> getWritten() {
+        List<int[]> ranges = new ArrayList<>();
+        String written = properties.getProperty(WRITTEN);
+        if (written != null) {
+            for (String range : written.split(",")) {
+                String[] parts = range.split(":");
+                ranges.add(new int[]{Integer.parseInt(parts[0]), Integer.parseInt(parts[1])});
+            }
+        }
+        return ranges;
+    }
+
+    void checksumSet(ChecksumIdentifier identifier) {
+        properties.setProperty(key(identifier, "checksumSet"), "true");
+    }
+
+    boolean isChecksumSet(ChecksumIdentifier identifier) {
+        return Boolean.parseBoolean(properties.getProperty(key(identifier, "checksumSet")));
+    }
+
+    void clear() {
+        properties.clear();
+    }
+
+    private static String key(ChecksumIdentifier identifier, String name) {
+        return "table." + identifier.name() + "." + name;
+    }
+
+}
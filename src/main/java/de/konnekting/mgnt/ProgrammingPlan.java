@@ -0,0 +1,163 @@
+/*
+ * Copyright (C) 2020 Alexander Christian <alex(at)root1.de>. All rights reserved.
+ *
+ * This file is part of KONNEKTING DeviceConfig.
+ *
+ *   KONNEKTING DeviceConfig is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   KONNEKTING DeviceConfig is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with KONNEKTING DeviceConfig.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.konnekting.mgnt;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Protocol operations a programming job will send, in order, created by
+ * {@link DeviceManagement#planProgramming(de.konnekting.deviceconfig.DeviceConfigContainer, de.konnekting.mgnt.DeviceManagement.ProgrammingTask)}
+ * without touching the bus. Telegram counts are requests only, each of them
+ * is answered by one response telegram.
+ *
+ * @author achristian
+ */
+public class ProgrammingPlan {
+
+    /**
+     * Round trip time in milliseconds assumed for request types without
+     * measured samples
+     */
+    public static final int DEFAULT_ROUND_TRIP = 100;
+
+    /**
+     * One protocol operation
+     */
+    public static class Step {
+
+        private final byte requestType;
+        private final int address;
+        private final int length;
+        private final int telegramCount;
+        private final long estimatedMillis;
+        private final String description;
+
+        Step(byte requestType, int address, int length, int telegramCount, long estimatedMillis, String description) {
+            this.requestType = requestType;
+            this.address = address;
+            this.length = length;
+            this.telegramCount = telegramCount;
+            this.estimatedMillis = estimatedMillis;
+            this.description = description;
+        }
+
+        /**
+         * @return message type of request, see ProgProtocol0x01.MSGTYPE_*
+         */
+        public byte getRequestType() {
+            return requestType;
+        }
+
+        /**
+         * @return memory address, or -1 if operation does not access memory
+         */
+        public int getAddress() {
+            return address;
+        }
+
+        /**
+         * @return number of bytes read or written, 0 if operation does not
+         * access memory
+         */
+        public int getLength() {
+            return length;
+        }
+
+        public int getTelegramCount() {
+            return telegramCount;
+        }
+
+        public long getEstimatedMillis() {
+            return estimatedMillis;
+        }
+
+        public String getDescription() {
+            return description;
+        }
+
+        @Override
+        public String toString() {
+            return "Step{" + "type=" + String.format("0x%02x", requestType)
+                    + (address >= 0 ? ", address=" + String.format("0x%04x", address) + ", length=" + length : "")
+                    + ", telegrams=" + telegramCount + ", " + description + '}';
+        }
+    }
+
+    private final List<Step> steps = new ArrayList<>();
+    private boolean exact = true;
+
+    ProgrammingPlan() {
+    }
+
+    void add(Step step) {
+        steps.add(step);
+    }
+
+    /**
+     * Mark plan as upper bound, because the device state had to be assumed
+     */
+    void setInexact() {
+        exact = false;
+    }
+
+    public List<Step> getSteps() {
+        return Collections.unmodifiableList(steps);
+    }
+
+    /**
+     * @return number of request telegrams, which is also the number of
+     * progress steps of the programming job
+     */
+    public int getTelegramCount() {
+        int count = 0;
+        for (Step step : steps) {
+            count += step.getTelegramCount();
+        }
+        return count;
+    }
+
+    /**
+     * @return estimated duration in milliseconds, based on the round trip
+     * times measured so far. Retries are not included.
+     */
+    public long getEstimatedMillis() {
+        long millis = 0;
+        for (Step step : steps) {
+            millis += step.getEstimatedMillis();
+        }
+        return millis;
+    }
+
+    /**
+     * @return true, if the plan is based on the known device memory. False if
+     * parts of it had to be read from the device or were unknown, then the
+     * plan is an upper bound.
+     */
+    public boolean isExact() {
+        return exact;
+    }
+
+    @Override
+    public String toString() {
+        return "ProgrammingPlan{" + "steps=" + steps.size() + ", telegrams=" + getTelegramCount() + ", estimatedMillis=" + getEstimatedMillis() + ", exact=" + exact + '}';
+    }
+
+}
@@ -0,0 +1,173 @@
+/*
+ * Copyright (C) 2020 Alexander Christian <alex(at)root1.de>. All rights reserved.
+ *
+ * This file is part of KONNEKTING DeviceConfig.
+ *
+ *   KONNEKTING DeviceConfig is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   KONNEKTING DeviceConfig is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with KONNEKTING DeviceConfig.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.konnekting.mgnt;
+
+import de.konnekting.deviceconfig.DeviceConfigContainer;
+import de.konnekting.mgnt.DeviceManagement.ProgrammingTask;
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.util.function.Consumer;
+
+/**
+ * Programming mode of one device, held over several operations. The prog
+ * mode handshake and the check of the device info are done once when the
+ * session is opened. Device memory read within the session is cached.
+ * Closing the session stops programming mode and restarts the device.
+ * <pre>
+ * try (ProgrammingSession session = deviceManagement.openSession(container, false)) {
+ *     session.sendFOTB(firmware);
+ *     session.program(ProgrammingTask.PARTIAL);
+ * }
+ * </pre>
+ *
+ * @author achristian
+ * @see DeviceManagement#openSession(DeviceConfigContainer, boolean)
+ */
+public class ProgrammingSession implements AutoCloseable {
+
+    private final DeviceManagement deviceManagement;
+    private final DeviceConfigContainer deviceConfigContainer;
+    private boolean restartOnClose = true;
+    private boolean closed;
+
+    ProgrammingSession(DeviceManagement deviceManagement, DeviceConfigContainer deviceConfigContainer) {
+        this.deviceManagement = deviceManagement;
+        this.deviceConfigContainer = deviceConfigContainer;
+    }
+
+    public DeviceConfigContainer getDeviceConfigContainer() {
+        return deviceConfigContainer;
+    }
+
+    /**
+     * Program configuration, without prog mode handshake, stop and restart
+     *
+     * @param programmingTask the task to run for programming
+     * @throws DeviceManagementException
+     */
+    public void program(ProgrammingTask programmingTask) throws DeviceManagementException {
+        ensureOpen();
+        deviceManagement.programInSession(deviceConfigContainer, programmingTask);
+    }
+
+    /**
+     * Plan programming within this session, see
+     * {@link DeviceManagement#planProgramming(DeviceConfigContainer, ProgrammingTask)}
+     *
+     * @param programmingTask the task to plan
+     * @return operations {@link #program(ProgrammingTask)} will send
+     * @throws DeviceManagementException
+     */
+    public ProgrammingPlan planProgramming(ProgrammingTask programmingTask) throws DeviceManagementException {
+        ensureOpen();
+        return deviceManagement.planProgramming(deviceConfigContainer, programmingTask);
+    }
+
+    public boolean sendFOTB(File f) throws DeviceManagementException {
+        ensureOpen();
+        return deviceManagement.sendFOTB(f);
+    }
+
+    public boolean sendData(File f, byte dataType, byte dataId) throws DeviceManagementException {
+        ensureOpen();
+        return deviceManagement.sendData(f, dataType, dataId);
+    }
+
+    public void readData(File f, byte dataType, byte dataId) throws DeviceManagementException {
+        ensureOpen();
+        deviceManagement.readData(f, dataType, dataId);
+    }
+
+    public long readData(WritableByteChannel channel, byte dataType, byte dataId) throws DeviceManagementException {
+        ensureOpen();
+        return deviceManagement.readData(channel, dataType, dataId);
+    }
+
+    public long readData(ByteBuffer dst, byte dataType, byte dataId) throws DeviceManagementException {
+        ensureOpen();
+        return deviceManagement.readData(dst, dataType, dataId);
+    }
+
+    public long readData(Consumer<ByteBuffer> consumer, byte dataType, byte dataId) throws DeviceManagementException {
+        ensureOpen();
+        return deviceManagement.readData(consumer, dataType, dataId);
+    }
+
+    public void removeData(byte dataType, byte dataId) throws DeviceManagementException {
+        ensureOpen();
+        deviceManagement.removeData(dataType, dataId);
+    }
+
+    /**
+     * Read device memory. Ranges already read in this session and not
+     * written since are not read again.
+     *
+     * @param address memory address
+     * @param length number of bytes
+     * @return memory content
+     * @throws DeviceManagementException
+     */
+    public byte[] memoryRead(int address, int length) throws DeviceManagementException {
+        ensureOpen();
+        return deviceManagement.sessionMemoryRead(address, length);
+    }
+
+    /**
+     * @return system table of device, read once per session
+     * @throws DeviceManagementException
+     */
+    public SystemTable readSystemTable() throws DeviceManagementException {
+        return new SystemTable(memoryRead(SystemTable.SYSTEMTABLE_ADDRESS, SystemTable.SIZE));
+    }
+
+    /**
+     * @param restartOnClose true (default), to restart device when closing
+     * the session
+     */
+    public void setRestartOnClose(boolean restartOnClose) {
+        this.restartOnClose = restartOnClose;
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * Stop programming mode and restart device, if enabled. Does nothing if
+     * already closed.
+     *
+     * @throws DeviceManagementException
+     */
+    @Override
+    public void close() throws DeviceManagementException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        deviceManagement.closeSession(this, restartOnClose);
+    }
+
+    private void ensureOpen() {
+        if (closed) {
+            throw new IllegalStateException("Programming session is closed");
+        }
+    }
+
+}
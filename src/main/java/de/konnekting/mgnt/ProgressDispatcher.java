@@ -0,0 +1,155 @@
+/*
+ * Copyright (C) 2020 Alexander Christian <alex(at)root1.de>. All rights reserved.
+ *
+ * This file is part of KONNEKTING DeviceConfig.
+ *
+ *   KONNEKTING DeviceConfig is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   KONNEKTING DeviceConfig is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with KONNEKTING DeviceConfig.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.konnekting.mgnt;
+
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Delivers progress events to {@link ProgramProgressListener}s on an
+ * executor, so slow listeners never block the programming thread. Events are
+ * delivered one after another, in order. Progress updates are coalesced:
+ * only the latest one is delivered, at most once per
+ * {@link #MIN_PROGRESS_INTERVAL}. Status messages are never dropped.
+ *
+ * @author achristian
+ */
+class ProgressDispatcher {
+
+    private static final Logger log = LoggerFactory.getLogger(ProgressDispatcher.class);
+
+    /**
+     * Min. milliseconds between two delivered progress updates
+     */
+    static final int MIN_PROGRESS_INTERVAL = 50;
+
+    private static final ExecutorService DEFAULT_EXECUTOR = Executors.newCachedThreadPool(r -> {
+        Thread t = new Thread(r, "KONNEKTING progress");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private final List<ProgramProgressListener> listeners = new CopyOnWriteArrayList<>();
+    private final Queue<Runnable> events = new ConcurrentLinkedQueue<>();
+    private final AtomicReference<int[]> progress = new AtomicReference<>();
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+    private volatile Executor executor = DEFAULT_EXECUTOR;
+    private long lastProgressNanos;
+
+    void setExecutor(Executor executor) {
+        this.executor = executor == null ? DEFAULT_EXECUTOR : executor;
+    }
+
+    void addListener(ProgramProgressListener listener) {
+        listeners.add(listener);
+    }
+
+    void removeListener(ProgramProgressListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Queue progress update, replacing one that is not delivered yet
+     */
+    void progress(int currentStep, int steps) {
+        progress.set(new int[]{currentStep, steps});
+        schedule(0);
+    }
+
+    /**
+     * Queue status message. A pending progress update is delivered before it.
+     */
+    void status(String statusMsg) {
+        int[] p = progress.getAndSet(null);
+        if (p != null) {
+            events.add(() -> deliverProgress(p));
+        }
+        events.add(() -> deliverStatus(statusMsg));
+        schedule(0);
+    }
+
+    private void schedule(long delayNanos) {
+        if (!scheduled.compareAndSet(false, true)) {
+            return;
+        }
+        Executor e = executor;
+        if (delayNanos > 0) {
+            e = CompletableFuture.delayedExecutor(delayNanos, TimeUnit.NANOSECONDS, e);
+        }
+        e.execute(this::drain);
+    }
+
+    private void drain() {
+        long delay = 0;
+        try {
+            Runnable event;
+            while ((event = events.poll()) != null) {
+                event.run();
+            }
+            int[] p = progress.get();
+            if (p != null) {
+                delay = lastProgressNanos + TimeUnit.MILLISECONDS.toNanos(MIN_PROGRESS_INTERVAL) - System.nanoTime();
+                if (delay <= 0 && progress.compareAndSet(p, null)) {
+                    deliverProgress(p);
+                }
+            }
+        } finally {
+            scheduled.set(false);
+        }
+        // events may have been queued while draining
+        if (!events.isEmpty()) {
+            schedule(0);
+        } else if (progress.get() != null) {
+            schedule(Math.max(delay, 0));
+        }
+    }
+
+    private void deliverProgress(int[] p) {
+        lastProgressNanos = System.nanoTime();
+        for (ProgramProgressListener listener : listeners) {
+            try {
+                listener.onProgressUpdate(p[0], p[1]);
+            } catch (RuntimeException ex) {
+                log.warn("Progress listener " + listener + " failed", ex);
+            }
+        }
+    }
+
+    private void deliverStatus(String statusMsg) {
+        for (ProgramProgressListener listener : listeners) {
+            try {
+                listener.onStatusMessage(statusMsg);
+            } catch (RuntimeException ex) {
+                log.warn("Progress listener " + listener + " failed", ex);
+            }
+        }
+    }
+
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright (C) 2020 Alexander Christian <alex(at)root1.de>. All rights reserved.
+ *
+ * This file is part of KONNEKTING DeviceConfig.
+ *
+ *   KONNEKTING DeviceConfig is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   KONNEKTING DeviceConfig is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with KONNEKTING DeviceConfig.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.konnekting.mgnt;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Properties;
+
+/**
+ * Properties kept in a file of the journal directory, see
+ * {@link DeviceManagement#setJournalDirectory(File)}. The file is replaced
+ * atomically when saved, so an interruption never leaves a broken file.
+ *
+ * @author achristian
+ */
+abstract class PropertiesStore {
+
+    private final File file;
+    private final String comment;
+    protected final Properties properties = new Properties();
+
+    /**
+     * @param file file of properties
+     * @param comment comment written to the top of the file
+     */
+    protected PropertiesStore(File file, String comment) {
+        this.file = file;
+        this.comment = comment;
+    }
+
+    /**
+     * Load properties from file, if it exists
+     *
+     * @throws IOException if existing file cannot be read
+     */
+    protected void load() throws IOException {
+        if (file.exists()) {
+            try (InputStream in = new FileInputStream(file)) {
+                properties.load(in);
+            }
+        }
+    }
+
+    boolean isEmpty() {
+        return properties.isEmpty();
+    }
+
+    /**
+     * Write properties to disk. The file is replaced atomically.
+     *
+     * @throws IOException
+     */
+    void save() throws IOException {
+        File tmp = new File(file.getPath() + ".tmp");
+        try (OutputStream out = new FileOutputStream(tmp)) {
+            properties.store(out, comment);
+        }
+        Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Clear properties and remove file
+     */
+    void delete() {
+        properties.clear();
+        if (file.exists() && !file.delete()) {
+            file.deleteOnExit();
+        }
+    }
+
+}
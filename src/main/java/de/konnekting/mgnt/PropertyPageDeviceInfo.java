@@ -27,6 +27,19 @@ import static de.konnekting.deviceconfig.utils.Bytes2ReadableValue.*;
 public class PropertyPageDeviceInfo {
 
     public static final int PROPERTY_PAGE_NUM = 0x00;
+
+    /**
+     * Capability flag: the device decompresses
+     * {@link de.konnekting.mgnt.protocol0x01.Lzss} compressed data writes
+     */
+    public static final int CAPABILITY_COMPRESSED_DATA_WRITE = 0x01;
+
+    /**
+     * Capability flag: the device continues an interrupted raw data write
+     * at the offset of a resume prepare
+     */
+    public static final int CAPABILITY_DATA_WRITE_RESUME = 0x02;
+
     private final byte systemtypeRaw;
     
     enum SystemType {
@@ -37,12 +50,15 @@ public class PropertyPageDeviceInfo {
     private int deviceId = -1;
     private int revision = -1;
     private SystemType systemType;
+    private int capabilities;
 
     public PropertyPageDeviceInfo(byte[] data) throws IllegalArgumentException {
         manufacturerId = convertUINT16(data[2], data[3]);
         deviceId = data[4]&0xFF;
         revision = data[5]&0xFF;
         systemtypeRaw = data[6];
+        // byte 7 is sent as unused 0xFF by devices without capability flags
+        capabilities = data[7] == (byte) 0xFF ? 0x00 : data[7] & 0xFF;
 
         switch (data[6]) {
             case (byte)0x00:
@@ -79,13 +95,22 @@ public class PropertyPageDeviceInfo {
         return revision;
     }
 
+    /**
+     * @param capability one of the CAPABILITY_ flags
+     * @return true, if the device reports this capability
+     */
+    public boolean hasCapability(int capability) {
+        return (capabilities & capability) == capability;
+    }
+
     @Override
     public String toString() {
         return "PropertyPageDeviceInfo{" + 
                 "manufacturerId=" + String.format("0x%04x",manufacturerId) + 
                 ", deviceId=" + String.format("0x%02x", deviceId) + 
                 ", revision=" + String.format("0x%02x", revision) + 
-                ", systemType=" + systemType + '}';
+                ", systemType=" + systemType + 
+                ", capabilities=" + String.format("0x%02x", capabilities) + '}';
     }
     
 
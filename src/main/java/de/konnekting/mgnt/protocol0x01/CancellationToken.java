@@ -0,0 +1,92 @@
+/*
+ * Copyright (C) 2020 Alexander Christian <alex(at)root1.de>. All rights reserved.
+ *
+ * This file is part of KONNEKTING DeviceConfig.
+ *
+ *   KONNEKTING DeviceConfig is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   KONNEKTING DeviceConfig is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with KONNEKTING DeviceConfig.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.konnekting.mgnt.protocol0x01;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cancels the requests of a {@link ProgProtocol0x01} session it is set on,
+ * see {@link ProgProtocol0x01#setCancellationToken(CancellationToken)}.
+ * Cancelling wakes up all waiting requests at once and prevents further
+ * requests from being sent. A token cannot be reset, use a new one per
+ * operation.
+ *
+ * @author achristian
+ */
+public class CancellationToken {
+
+    private volatile boolean cancelled;
+    private final List<Runnable> callbacks = new CopyOnWriteArrayList<>();
+
+    /**
+     * Cancel. Can be called from any thread, more than once.
+     */
+    public void cancel() {
+        synchronized (this) {
+            if (cancelled) {
+                return;
+            }
+            cancelled = true;
+            notifyAll();
+        }
+        for (Runnable callback : callbacks) {
+            callback.run();
+        }
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * @throws CancelledException if cancelled
+     */
+    public void throwIfCancelled() throws CancelledException {
+        if (cancelled) {
+            throw new CancelledException("Cancelled");
+        }
+    }
+
+    /**
+     * Run callback on cancel, or right away if already cancelled
+     */
+    void onCancel(Runnable callback) {
+        callbacks.add(callback);
+        if (cancelled && callbacks.remove(callback)) {
+            callback.run();
+        }
+    }
+
+    /**
+     * Sleep, but return as soon as cancelled
+     *
+     * @param millis milliseconds to sleep at most
+     * @throws InterruptedException
+     */
+    synchronized void sleep(long millis) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(millis);
+        long remaining;
+        while (!cancelled && (remaining = deadline - System.nanoTime()) > 0) {
+            TimeUnit.NANOSECONDS.timedWait(this, remaining);
+        }
+    }
+
+}
@@ -0,0 +1,39 @@
+/*
+ * Copyright (C) 2020 Alexander Christian <alex(at)root1.de>. All rights reserved.
+ *
+ * This file is part of KONNEKTING DeviceConfig.
+ *
+ *   KONNEKTING DeviceConfig is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   KONNEKTING DeviceConfig is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with KONNEKTING DeviceConfig.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.konnekting.mgnt.protocol0x01;
+
+import de.root1.slicknx.KnxException;
+
+/**
+ * Thrown when a request is cancelled via its {@link CancellationToken} or
+ * the waiting thread is interrupted.
+ *
+ * @author achristian
+ */
+public class CancelledException extends KnxException {
+
+    public CancelledException(String message) {
+        super(message);
+    }
+
+    public CancelledException(String message, Throwable cause) {
+        super(message, cause);
+    }
+
+}
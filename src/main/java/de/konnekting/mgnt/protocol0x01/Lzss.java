@@ -0,0 +1,144 @@
+/*
+ * Copyright (C) 2020 Alexander Christian <alex(at)root1.de>. All rights reserved.
+ *
+ * This file is part of KONNEKTING DeviceConfig.
+ *
+ *   KONNEKTING DeviceConfig is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   KONNEKTING DeviceConfig is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with KONNEKTING DeviceConfig.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.konnekting.mgnt.protocol0x01;
+
+import java.io.ByteArrayOutputStream;
+
+/**
+ * LZSS codec for compressed data writes, see
+ * {@link ProgProtocol0x01#DATA_WRITE_COMPRESSION_LZSS}. The format is made
+ * for small devices: matches reach back at most {@link #WINDOW_SIZE} bytes,
+ * so a decoder needs nothing but a ring buffer of that size, and every token
+ * is byte aligned.
+ * <p>
+ * The data is a sequence of groups. Each group starts with a flag byte,
+ * followed by up to 8 items, one per flag bit starting with the least
+ * significant one. A set bit means a literal byte, a cleared bit a match of
+ * two bytes: distance - 1 and length - {@link #MIN_MATCH}. The end of the
+ * data is given by the uncompressed size, the flag bits of a last, shorter
+ * group are ignored.
+ * <p>
+ * {@link #decompress(byte[], int)} is the reference for device
+ * implementations.
+ *
+ * @author achristian
+ */
+public final class Lzss {
+
+    public static final int WINDOW_SIZE = 256;
+    public static final int MIN_MATCH = 3;
+    public static final int MAX_MATCH = MIN_MATCH + 255;
+
+    private Lzss() {
+    }
+
+    /**
+     * Compress data. Matches are searched greedily over the whole window.
+     *
+     * @param data data to compress
+     * @return compressed data, may be larger than the input for data that
+     * does not compress
+     */
+    public static byte[] compress(byte[] data) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(data.length + data.length / 8 + 1);
+        byte[] group = new byte[1 + 8 * 2];
+        int groupLength = 1;
+        int items = 0;
+        int flags = 0;
+        int pos = 0;
+        while (pos < data.length) {
+            int bestLength = 0;
+            int bestDistance = 0;
+            int maxLength = Math.min(MAX_MATCH, data.length - pos);
+            int maxDistance = Math.min(WINDOW_SIZE, pos);
+            for (int distance = 1; distance <= maxDistance && bestLength < maxLength; distance++) {
+                int length = 0;
+                // may overlap the current position, the decoder copies byte by byte
+                while (length < maxLength && data[pos - distance + length] == data[pos + length]) {
+                    length++;
+                }
+                if (length > bestLength) {
+                    bestLength = length;
+                    bestDistance = distance;
+                }
+            }
+            if (bestLength >= MIN_MATCH) {
+                group[groupLength++] = (byte) (bestDistance - 1);
+                group[groupLength++] = (byte) (bestLength - MIN_MATCH);
+                pos += bestLength;
+            } else {
+                flags |= 1 << items;
+                group[groupLength++] = data[pos++];
+            }
+            items++;
+            if (items == 8 || pos == data.length) {
+                group[0] = (byte) flags;
+                out.write(group, 0, groupLength);
+                groupLength = 1;
+                items = 0;
+                flags = 0;
+            }
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Decompress data
+     *
+     * @param data compressed data
+     * @param size uncompressed size
+     * @return uncompressed data
+     * @throws IllegalArgumentException if data is corrupt or does not match
+     * the size
+     */
+    public static byte[] decompress(byte[] data, int size) {
+        byte[] out = new byte[size];
+        int in = 0;
+        int pos = 0;
+        while (pos < size) {
+            int flags = read(data, in++);
+            for (int bit = 0; bit < 8 && pos < size; bit++) {
+                if ((flags & (1 << bit)) != 0) {
+                    out[pos++] = (byte) read(data, in++);
+                } else {
+                    int distance = read(data, in++) + 1;
+                    int length = read(data, in++) + MIN_MATCH;
+                    if (distance > pos || pos + length > size) {
+                        throw new IllegalArgumentException("Invalid match at " + pos + ": distance=" + distance + ", length=" + length);
+                    }
+                    for (int i = 0; i < length; i++, pos++) {
+                        out[pos] = out[pos - distance];
+                    }
+                }
+            }
+        }
+        if (in != data.length) {
+            throw new IllegalArgumentException((data.length - in) + " bytes left after " + size + " bytes of uncompressed data");
+        }
+        return out;
+    }
+
+    private static int read(byte[] data, int index) {
+        if (index >= data.length) {
+            throw new IllegalArgumentException("Compressed data ends unexpectedly");
+        }
+        return data[index] & 0xFF;
+    }
+
+}
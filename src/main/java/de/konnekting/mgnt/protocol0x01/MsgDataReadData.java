@@ -21,6 +21,7 @@ package de.konnekting.mgnt.protocol0x01;
 import de.konnekting.deviceconfig.utils.Helper;
 import static de.konnekting.deviceconfig.utils.Bytes2ReadableValue.*;
 import de.konnekting.deviceconfig.utils.ReadableValue2Bytes;
+import java.nio.ByteBuffer;
 import java.util.Arrays;
 
 /**
@@ -30,21 +31,32 @@ import java.util.Arrays;
 class MsgDataReadData extends ProgMessage {
 
     private int count;
-    private byte[] receivedData;
 
     public MsgDataReadData(byte[] data) {
         super(data);
         count = data[2];
-        receivedData = Arrays.copyOfRange(data, 3, 3 + count);
+    }
+    
+    public int getCount() {
+        return count;
     }
     
     public byte[] getReceivedData(){
-        return receivedData;
+        return Arrays.copyOfRange(data, 3, 3 + count);
+    }
+
+    /**
+     * Copy received data into buffer, without intermediate array
+     *
+     * @param dst buffer with at least {@link #getCount()} bytes remaining
+     */
+    void getReceivedData(ByteBuffer dst) {
+        dst.put(data, 3, count);
     }
 
     @Override
     public String toString() {
-        return "MsgDataReadData{" + "count=" + count + ", receivedData=" + Helper.bytesToHex(receivedData, true) + '}';
+        return "MsgDataReadData{" + "count=" + count + ", receivedData=" + Helper.bytesToHex(getReceivedData(), true) + '}';
     }
 
 }
@@ -31,6 +31,8 @@ class MsgDataWritePrepare extends ProgMessage {
     private byte dataType;
     private byte dataId;
     private long size;
+    private long uncompressedSize = -1;
+    private long offset = -1;
     
     public MsgDataWritePrepare(byte dataType, byte dataId, long size) throws KnxException {
         super(MSGTYPE_DATA_WRITE_PREPARE);
@@ -48,16 +50,55 @@ class MsgDataWritePrepare extends ProgMessage {
 
         data[2] = dataType;
         data[3] = dataId;
-        data[4] = convertUINT32(size)[0];
-        data[5] = convertUINT32(size)[1];
-        data[6] = convertUINT32(size)[2];
-        data[7] = convertUINT32(size)[3];
+        System.arraycopy(convertUINT32(size), 0, data, 4, 4);
         fillUnused(8);
     }
 
+    /**
+     * Prepare a data write of {@link Lzss} compressed data
+     *
+     * @param dataType data type
+     * @param dataId data id
+     * @param size number of compressed bytes
+     * @param uncompressedSize number of bytes after decompression
+     * @throws KnxException
+     */
+    public MsgDataWritePrepare(byte dataType, byte dataId, long size, long uncompressedSize) throws KnxException {
+        this(dataType, dataId, size);
+        this.uncompressedSize = uncompressedSize;
+
+        if (uncompressedSize > UINT32_MAX) {
+            throw new IllegalArgumentException("max. "+UINT32_MAX+" bytes of data!");
+        }
+
+        data[8] = ProgProtocol0x01.DATA_WRITE_COMPRESSION_LZSS;
+        System.arraycopy(convertUINT32(uncompressedSize), 0, data, 9, 4);
+    }
+
+    /**
+     * Prepare continuing an interrupted raw data write
+     *
+     * @param dataType data type
+     * @param dataId data id
+     * @param size number of bytes of all data
+     * @param offset number of bytes the device already received
+     * @return message
+     * @throws KnxException
+     */
+    static MsgDataWritePrepare resume(byte dataType, byte dataId, long size, long offset) throws KnxException {
+        if (offset < 0 || offset > size) {
+            throw new IllegalArgumentException("offset must be in range 0.."+size);
+        }
+        MsgDataWritePrepare msg = new MsgDataWritePrepare(dataType, dataId, size);
+        msg.offset = offset;
+        msg.data[8] = ProgProtocol0x01.DATA_WRITE_RESUME;
+        System.arraycopy(convertUINT32(offset), 0, msg.data, 9, 4);
+        return msg;
+    }
+
     @Override
     public String toString() {
-        return "MsgDataWritePrepare{" + "dataType=" + dataType + ", dataId=" + dataId + ", size=" + size + "}";
+        return "MsgDataWritePrepare{" + "dataType=" + dataType + ", dataId=" + dataId + ", size=" + size + (uncompressedSize < 0 ? "" : ", uncompressedSize=" + uncompressedSize) + (offset < 0 ? "" : ", offset=" + offset) + "}";
     }
 
     
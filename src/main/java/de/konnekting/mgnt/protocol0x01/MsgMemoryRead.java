@@ -20,7 +20,6 @@ package de.konnekting.mgnt.protocol0x01;
 
 import de.konnekting.deviceconfig.utils.Helper;
 import static de.konnekting.mgnt.protocol0x01.ProgProtocol0x01.MSGTYPE_MEMORY_READ;
-import static de.konnekting.deviceconfig.utils.ReadableValue2Bytes.*;
 
 /**
  *
@@ -43,8 +42,8 @@ class MsgMemoryRead extends ProgMessage {
         this.address = (short) (memoryAddress & 0xFFFF);
 
         data[2] = (byte) count;
-        data[3] = convertUINT16(address)[0];
-        data[4] = convertUINT16(address)[1];
+        data[3] = (byte) (address >>> 8);
+        data[4] = (byte) address;
     }
 
     @Override
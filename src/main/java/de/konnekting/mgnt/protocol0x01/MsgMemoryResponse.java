@@ -44,6 +44,16 @@ class MsgMemoryResponse extends ProgMessage {
         return address;
     }
     
+    /**
+     * Copy received memory bytes into given array
+     *
+     * @param dst destination array
+     * @param offset index in destination to copy first byte to
+     */
+    public void copyData(byte[] dst, int offset) {
+        System.arraycopy(data, 5, dst, offset, count);
+    }
+
     public byte[] getData() {
         byte[] b = new byte[count];
         System.arraycopy(data, 5, b, 0, count);
@@ -21,7 +21,6 @@ package de.konnekting.mgnt.protocol0x01;
 import de.konnekting.deviceconfig.utils.Helper;
 import de.root1.slicknx.KnxException;
 import static de.konnekting.mgnt.protocol0x01.ProgProtocol0x01.MSGTYPE_MEMORY_WRITE;
-import static de.konnekting.deviceconfig.utils.ReadableValue2Bytes.*;
 import static de.konnekting.deviceconfig.utils.Bytes2ReadableValue.*;
 
 /**
@@ -31,16 +30,29 @@ import static de.konnekting.deviceconfig.utils.Bytes2ReadableValue.*;
 class MsgMemoryWrite extends ProgMessage {
 
     public MsgMemoryWrite(int address, byte[] b) throws KnxException {
+        this(address, b, 0, b.length);
+    }
+
+    /**
+     * Write part of given array, without copying it first
+     *
+     * @param address memory address to write to
+     * @param b source array
+     * @param offset index of first byte to write
+     * @param length number of bytes to write, 1..9
+     * @throws KnxException
+     */
+    public MsgMemoryWrite(int address, byte[] b, int offset, int length) throws KnxException {
         super(MSGTYPE_MEMORY_WRITE);
 
-        if (b.length > 9) {
+        if (length > 9) {
             throw new IllegalArgumentException("max. 1..9 bytes of data!");
         }
 
-        data[2] = (byte) b.length;
-        data[3] = convertUINT16(address)[0];
-        data[4] = convertUINT16(address)[1];
-        System.arraycopy(b, 0, data, 5, b.length);
+        data[2] = (byte) length;
+        data[3] = (byte) (address >>> 8);
+        data[4] = (byte) address;
+        System.arraycopy(b, offset, data, 5, length);
 
     }
 
@@ -18,7 +18,6 @@
  */
 package de.konnekting.mgnt.protocol0x01;
 
-import de.konnekting.deviceconfig.utils.Bytes2ReadableValue;
 import de.konnekting.deviceconfig.utils.Helper;
 import de.root1.slicknx.KnxException;
 import de.root1.slicknx.Utils;
@@ -35,7 +34,6 @@ class MsgProgrammingModeWrite extends ProgMessage {
         
         byte[] ia = Helper.convertIaToBytes(individualAddress);
 
-        log.error("ia={}", String.format("0x%04x",Bytes2ReadableValue.convertUINT16(ia)));
         data[2] = ia[0];
         data[3] = ia[1];
         data[4] = (byte) (progMode ? 0x01 : 0x00);
@@ -0,0 +1,270 @@
+/*
+ * Copyright (C) 2020 Alexander Christian <alex(at)root1.de>. All rights reserved.
+ *
+ * This file is part of KONNEKTING DeviceConfig.
+ *
+ *   KONNEKTING DeviceConfig is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   KONNEKTING DeviceConfig is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with KONNEKTING DeviceConfig.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.konnekting.mgnt.protocol0x01;
+
+import de.root1.slicknx.KnxException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+/**
+ * Expectation for one or more response messages. Registered at the
+ * {@link ResponseDispatcher} <b>before</b> the request is sent and completed
+ * directly from the telegram listener. Can be waited for blocking with
+ * {@link #await(int)} or asynchronously via {@link #future()}.
+ *
+ * @author achristian
+ * @param <T> type of expected message
+ */
+class PendingResponse<T extends ProgMessage> {
+
+    private final Class<T> msgClass;
+    private final String source;
+    private final Predicate<? super T> filter;
+    private final int expectedCount;
+    private final List<T> messages = new ArrayList<>();
+    private KnxException failure;
+    private long sentNanos;
+    private long receivedNanos;
+    private long lastReceivedNanos;
+    private Consumer<? super T> listener;
+    private final CompletableFuture<List<T>> future = new CompletableFuture<>();
+    private String lastSource;
+
+    /**
+     * @param msgClass class of expected message
+     * @param source individual address the message has to come from, or null
+     * for any source
+     * @param filter additional filter, or null
+     * @param expectedCount number of messages after which this expectation is
+     * complete
+     */
+    PendingResponse(Class<T> msgClass, String source, Predicate<? super T> filter, int expectedCount) {
+        this.msgClass = msgClass;
+        this.source = source;
+        this.filter = filter;
+        this.expectedCount = expectedCount;
+    }
+
+    Class<T> getMessageClass() {
+        return msgClass;
+    }
+
+    /**
+     * @param msgSource source individual address of a telegram
+     * @return true, if this expectation accepts telegrams of this source
+     */
+    boolean acceptsSource(String msgSource) {
+        return source == null || source.equals(msgSource);
+    }
+
+    /**
+     * Offer a received message to this expectation.
+     *
+     * @param msg received message
+     * @param msgSource source individual address of the telegram
+     * @return true, if message was consumed by this expectation
+     */
+    boolean offer(ProgMessage msg, String msgSource) {
+        T t;
+        Consumer<? super T> l;
+        List<T> completed = null;
+        synchronized (this) {
+            if (isDone()) {
+                return false;
+            }
+            if (!msgClass.isInstance(msg)) {
+                return false;
+            }
+            if (!acceptsSource(msgSource)) {
+                return false;
+            }
+            t = msgClass.cast(msg);
+            if (filter != null && !filter.test(t)) {
+                return false;
+            }
+            lastReceivedNanos = System.nanoTime();
+            if (messages.isEmpty()) {
+                receivedNanos = lastReceivedNanos;
+            }
+            messages.add(t);
+            lastSource = msgSource;
+            l = listener;
+            if (isDone()) {
+                completed = new ArrayList<>(messages);
+            }
+            notifyAll();
+        }
+        // outside of lock, so a slow listener does not block waiting threads
+        if (l != null) {
+            l.accept(t);
+        }
+        if (completed != null) {
+            future.complete(completed);
+        }
+        return true;
+    }
+
+    /**
+     * Set listener that gets each accepted message as soon as it arrives.
+     * Called from the receiving thread.
+     *
+     * @param listener listener, or null
+     */
+    synchronized void setListener(Consumer<? super T> listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Remember when the request belonging to this expectation has been sent
+     */
+    synchronized void markSent() {
+        sentNanos = System.nanoTime();
+    }
+
+    /**
+     * @param nanos point in time, as of {@link System#nanoTime()}
+     * @return true, if the request was sent before given time
+     */
+    synchronized boolean isSentBefore(long nanos) {
+        return sentNanos != 0 && sentNanos - nanos < 0;
+    }
+
+    /**
+     * @return time between sending the request and receiving the first
+     * response in milliseconds, or -1 if not available
+     */
+    synchronized double getRoundTripMillis() {
+        if (sentNanos == 0 || messages.isEmpty()) {
+            return -1;
+        }
+        return (receivedNanos - sentNanos) / 1000000d;
+    }
+
+    /**
+     * @return source IA of the last received message, or null
+     */
+    synchronized String getLastSource() {
+        return lastSource;
+    }
+
+    /**
+     * Completes this expectation exceptionally, f.i. due to a NACK
+     *
+     * @param ex cause
+     */
+    void fail(KnxException ex) {
+        synchronized (this) {
+            if (isDone()) {
+                return;
+            }
+            failure = ex;
+        }
+        // complete future first, so woken waiters find it completed
+        future.completeExceptionally(ex);
+        synchronized (this) {
+            notifyAll();
+        }
+    }
+
+    /**
+     * Ends asynchronous waiting: completes {@link #future()} with the
+     * messages received so far, which may be none.
+     */
+    void expire() {
+        List<T> received;
+        synchronized (this) {
+            received = new ArrayList<>(messages);
+        }
+        future.complete(received);
+    }
+
+    /**
+     * @return future that is completed from the receiving thread as soon as
+     * the expected number of messages is received, or by {@link #expire()}.
+     * Completed exceptionally by {@link #fail(KnxException)}.
+     */
+    CompletableFuture<List<T>> future() {
+        return future;
+    }
+
+    synchronized boolean isDone() {
+        return failure != null || messages.size() >= expectedCount;
+    }
+
+    /**
+     * Wait until the expected number of messages is received or the timeout
+     * elapsed.
+     *
+     * @param timeout milliseconds to wait at most
+     * @return messages received so far, may be empty
+     * @throws KnxException if expectation failed or waiting got interrupted
+     */
+    synchronized List<T> await(int timeout) throws KnxException {
+        return await(timeout, 0);
+    }
+
+    /**
+     * Wait until the expected number of messages is received, no message
+     * arrived for the quiet period, or the timeout elapsed.
+     *
+     * @param timeout milliseconds to wait at most
+     * @param quietPeriod milliseconds without a new message after which
+     * waiting ends early, counted from the start of waiting or the last
+     * message. 0 to wait for the whole timeout.
+     * @return messages received so far, may be empty
+     * @throws KnxException if expectation failed, or
+     * {@link CancelledException} if waiting got interrupted
+     */
+    synchronized List<T> await(int timeout, int quietPeriod) throws KnxException {
+        long start = System.nanoTime();
+        long deadline = start + TimeUnit.MILLISECONDS.toNanos(timeout);
+        long quiet = TimeUnit.MILLISECONDS.toNanos(quietPeriod);
+        try {
+            while (!isDone()) {
+                long now = System.nanoTime();
+                long remaining = deadline - now;
+                if (quiet > 0) {
+                    long last = messages.isEmpty() || lastReceivedNanos - start < 0 ? start : lastReceivedNanos;
+                    remaining = Math.min(remaining, last + quiet - now);
+                }
+                if (remaining <= 0) {
+                    break;
+                }
+                TimeUnit.NANOSECONDS.timedWait(this, remaining);
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new CancelledException("Interrupted while waiting for " + msgClass.getSimpleName(), ex);
+        }
+        if (failure != null) {
+            throw failure;
+        }
+        return new ArrayList<>(messages);
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "PendingResponse{" + "type=" + msgClass.getSimpleName() + ", source=" + source + ", received=" + messages.size() + "/" + expectedCount + '}';
+    }
+
+}
@@ -0,0 +1,56 @@
+/*
+ * Copyright (C) 2020 Alexander Christian <alex(at)root1.de>. All rights reserved.
+ *
+ * This file is part of KONNEKTING DeviceConfig.
+ *
+ *   KONNEKTING DeviceConfig is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   KONNEKTING DeviceConfig is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with KONNEKTING DeviceConfig.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.konnekting.mgnt.protocol0x01;
+
+import de.root1.slicknx.GroupAddressListener;
+import de.root1.slicknx.KnxException;
+
+/**
+ * Link a {@link ProgProtocolHub} exchanges telegrams on
+ * {@link ProgProtocol0x01#PROG_GA} over. Usually a {@link de.root1.slicknx.Knx}
+ * connection.
+ *
+ * @author achristian
+ */
+interface ProgLink {
+
+    /**
+     * Start passing telegrams on {@link ProgProtocol0x01#PROG_GA} to the
+     * listener
+     *
+     * @param listener listener
+     */
+    void listen(GroupAddressListener listener);
+
+    /**
+     * Stop passing telegrams to the listener
+     *
+     * @param listener listener
+     */
+    void unlisten(GroupAddressListener listener);
+
+    /**
+     * Send telegram to {@link ProgProtocol0x01#PROG_GA}
+     *
+     * @param msgData telegram
+     * @throws KnxException
+     */
+    void write(byte[] msgData) throws KnxException;
+
+}
@@ -19,6 +19,7 @@
 package de.konnekting.mgnt.protocol0x01;
 
 import static de.konnekting.mgnt.protocol0x01.ProgProtocol0x01.PROTOCOL_VERSION;
+import java.util.Arrays;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -28,7 +29,7 @@ import org.slf4j.LoggerFactory;
  */
 abstract class ProgMessage {
 
-    protected Logger log = LoggerFactory.getLogger(ProgMessage.class);
+    protected static final Logger log = LoggerFactory.getLogger(ProgMessage.class);
     protected final byte[] data;
     private static final byte UNUSED = (byte) 0xFF;
 
@@ -41,12 +42,10 @@ abstract class ProgMessage {
      * @param type 
      */
     public ProgMessage(byte type) {
-        data = new byte[14];
+        data = new byte[ProgMessageCodec.TELEGRAM_SIZE];
         data[0] = PROTOCOL_VERSION;
         data[1] = type;
-        for (int i = 2; i < data.length; i++) {
-            data[i] = UNUSED;
-        }
+        Arrays.fill(data, 2, data.length, UNUSED);
     }
 
     public byte getType() {
@@ -78,9 +77,7 @@ abstract class ProgMessage {
      * @param startIndex start to fill "unused" here
      */
     void fillUnused(int startIndex) {
-        for (int i = startIndex; i < data.length; i++) {
-            data[i] = UNUSED;
-        }
+        Arrays.fill(data, startIndex, data.length, UNUSED);
     }
 
     public byte[] getData() {
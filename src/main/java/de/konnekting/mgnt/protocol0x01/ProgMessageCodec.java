@@ -0,0 +1,83 @@
+/*
+ * Copyright (C) 2020 Alexander Christian <alex(at)root1.de>. All rights reserved.
+ *
+ * This file is part of KONNEKTING DeviceConfig.
+ *
+ *   KONNEKTING DeviceConfig is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   KONNEKTING DeviceConfig is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with KONNEKTING DeviceConfig.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.konnekting.mgnt.protocol0x01;
+
+import de.konnekting.deviceconfig.utils.Helper;
+import static de.konnekting.mgnt.protocol0x01.ProgProtocol0x01.*;
+
+/**
+ * Decodes received telegrams into messages. Decoders are looked up by message
+ * type in a table. The telegram's byte array is wrapped, not copied.
+ *
+ * @author achristian
+ */
+class ProgMessageCodec {
+
+    /**
+     * Size of each protocol telegram
+     */
+    static final int TELEGRAM_SIZE = 14;
+
+    @FunctionalInterface
+    interface Decoder {
+
+        ProgMessage decode(byte[] data) throws InvalidMessageException;
+    }
+
+    private static final Decoder[] DECODERS = new Decoder[256];
+
+    static {
+        // handle only answer messages
+        DECODERS[MSGTYPE_ACK & 0xFF] = MsgAck::new;
+        DECODERS[MSGTYPE_PROPERTY_PAGE_RESPONSE & 0xFF] = MsgPropertyPageResponse::new;
+        DECODERS[MSGTYPE_PROGRAMMING_MODE_RESPONSE & 0xFF] = MsgProgrammingModeResponse::new;
+        DECODERS[MSGTYPE_MEMORY_RESPONSE & 0xFF] = MsgMemoryResponse::new;
+        DECODERS[MSGTYPE_DATA_READ_RESPONSE & 0xFF] = MsgDataReadResponse::new;
+        DECODERS[MSGTYPE_DATA_READ_DATA & 0xFF] = MsgDataReadData::new;
+    }
+
+    private ProgMessageCodec() {
+    }
+
+    /**
+     * Decode received telegram
+     *
+     * @param data telegram, will be owned by the returned message
+     * @return decoded message
+     * @throws InvalidMessageException if telegram is not a known answer of
+     * this protocol version
+     */
+    static ProgMessage decode(byte[] data) throws InvalidMessageException {
+        if (data.length != TELEGRAM_SIZE) {
+            throw new InvalidMessageException(String.format("Telegram size does not match. expected: %d, got: %d", TELEGRAM_SIZE, data.length));
+        }
+
+        byte version = data[0];
+        if (version != PROTOCOL_VERSION) {
+            throw new InvalidMessageException(String.format("Protocol version in telegram does not match. expected: 0x%02x, got: 0x%02x. %s", PROTOCOL_VERSION, version, Helper.bytesToHex(data, true)));
+        }
+
+        Decoder decoder = DECODERS[data[1] & 0xFF];
+        if (decoder == null) {
+            throw new InvalidMessageException("Received unknown/invalid message: " + Helper.bytesToHex(data, true));
+        }
+        return decoder.decode(data);
+    }
+
+}
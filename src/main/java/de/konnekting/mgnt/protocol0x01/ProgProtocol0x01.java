@@ -20,15 +20,25 @@ package de.konnekting.mgnt.protocol0x01;
 
 import de.konnekting.deviceconfig.utils.Helper;
 import de.konnekting.mgnt.ChecksumIdentifier;
-import de.root1.slicknx.GroupAddressEvent;
-import de.root1.slicknx.GroupAddressListener;
 import de.root1.slicknx.Knx;
 import de.root1.slicknx.KnxException;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.IntConsumer;
 import java.util.zip.CRC32;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -45,6 +55,19 @@ public class ProgProtocol0x01 {
     public static final byte UPDATE_DATATYPE = (byte) 0x00;
     public static final byte UPDATE_DATAID = (byte) 0x00;
 
+    /**
+     * Compression of data write payload, sent in byte 8 of the data write
+     * prepare message. The unused value 0xFF means raw data.
+     */
+    public static final byte DATA_WRITE_COMPRESSION_LZSS = (byte) 0x01;
+
+    /**
+     * Value of byte 8 of the data write prepare message to continue an
+     * interrupted raw transfer at the offset in bytes 9..12, see
+     * {@link #dataWritePrepareResume(byte, byte, long, long)}.
+     */
+    public static final byte DATA_WRITE_RESUME = (byte) 0x80;
+
     /**
      * Number of bytes memoryread/memorywrite can handle at once
      */
@@ -59,18 +82,46 @@ public class ProgProtocol0x01 {
      */
     public static final int DATA_READ_BYTES_MAX = 11;
     
+    /**
+     * Create a session that is not bound to a device. It gets every message
+     * on the connection which no bound session consumed.
+     *
+     * @param knx connection
+     * @return new session
+     */
     public static ProgProtocol0x01 getInstance(Knx knx) {
 //        boolean debug = Boolean.getBoolean("de.root1.slicknx.konnekting.debug");
 //        if (debug) {
 //            WAIT_TIMEOUT = 5000;
 //            log.info("###### RUNNING DEBUG MODE #######");
 //        }
-        return new ProgProtocol0x01(knx);
+        return new ProgProtocol0x01(ProgProtocolHub.of(knx), null);
+    }
+
+    /**
+     * Create a session bound to the device with the given individual address.
+     * It only gets messages sent by this device, so several sessions can
+     * share one connection without cross-talk.
+     *
+     * @param knx connection
+     * @param individualAddress address of the device
+     * @return new session
+     */
+    public static ProgProtocol0x01 getInstance(Knx knx, String individualAddress) {
+        if (individualAddress == null) {
+            throw new IllegalArgumentException("individual address must not be null");
+        }
+        return new ProgProtocol0x01(ProgProtocolHub.of(knx), individualAddress);
     }
     
-    private final Knx knx;
+    private final ProgProtocolHub hub;
+    private final String individualAddress;
     
     private static int WAIT_TIMEOUT = 1500; // produktiv: 500ms, debug: 5000ms
+    
+    private volatile int memoryWriteWindowSize = 1;
+    private volatile int memoryReadWindowSize = 1;
+    private volatile int dataWriteWindowSize = 1;
 
     public static final String PROG_GA = "15/7/255";
     public static final byte PROTOCOL_VERSION = 0x01;
@@ -103,229 +154,501 @@ public class ProgProtocol0x01 {
     
     public static final byte MSGTYPE_DATA_REMOVE = 0x2E;
     
-    private final List<ProgMessage> receivedMessages = new ArrayList<>();
+    private final ResponseDispatcher dispatcher = new ResponseDispatcher();
     
-    private final GroupAddressListener gal = new GroupAddressListener() {
-        
-        @Override
-        public void readRequest(GroupAddressEvent event) {
-            // not handled
-        }
-        
-        @Override
-        public void readResponse(GroupAddressEvent event) {
-            // not handled
+    private final RttEstimator rttEstimator = new RttEstimator();
+    
+    /**
+     * IA of the device that answered last. Used to look up round trip times.
+     */
+    private volatile String deviceAddress;
+
+    /**
+     * IA of the device this session talks to. Answers to requests are only
+     * accepted from this device, so sessions sharing a connection do not
+     * take each other's answers. null accepts any device.
+     */
+    private volatile String targetAddress;
+    
+    /**
+     * expectation for the next message of a running data read
+     */
+    private volatile PendingResponse<ProgMessage> nextDataRead;
+    
+    /**
+     * retry policies of idempotent requests, by message type
+     */
+    private final Map<Byte, RetryPolicy> retryPolicies = new ConcurrentHashMap<>();
+    
+    private final AtomicInteger retryCount = new AtomicInteger();
+    
+    private volatile CancellationToken cancellationToken;
+    
+    /**
+     * Create a session on the given hub
+     *
+     * @param hub hub of connection
+     * @param individualAddress address of the device to bind to, or null
+     */
+    ProgProtocol0x01(ProgProtocolHub hub, String individualAddress) {
+        this.hub = hub;
+        this.individualAddress = individualAddress;
+        this.deviceAddress = individualAddress;
+        this.targetAddress = individualAddress;
+        this.retryPolicies.put(MSGTYPE_MEMORY_WRITE, RetryPolicy.DEFAULT);
+        this.retryPolicies.put(MSGTYPE_CHECKSUM_SET, RetryPolicy.DEFAULT);
+        hub.attach(this);
+    }
+
+    /**
+     * @return address of device this session is bound to, or null if it is
+     * not bound
+     */
+    public String getIndividualAddress() {
+        return individualAddress;
+    }
+
+    /**
+     * Set device this session talks to. Answers to all requests, except
+     * reading the programming mode, are only accepted from this device.
+     * Sessions bound to a device start with its address.
+     *
+     * @param individualAddress address of device, or null to accept answers
+     * of any device
+     */
+    public void setTargetAddress(String individualAddress) {
+        targetAddress = individualAddress;
+        if (individualAddress != null) {
+            deviceAddress = individualAddress;
         }
-        
-        @Override
-        public void write(GroupAddressEvent event) {
-            
-            if (event.getDestination().equals(PROG_GA)) {
-                try {
-                    // seems to be relevant
-                    byte[] data = event.getData();
-                    ProgMessage msg = null;
-                    byte version = data[0];
-                    
-                    if (data.length != 14) {
-                        throw new InvalidMessageException(String.format("Telegram size does not match. expected: %i, got: %i", 14, data.length));
-                    }
-                    
-                    if (version != PROTOCOL_VERSION) {
-                        throw new InvalidMessageException(String.format("Protocol version in telegram does not match. expected: 0x%02x, got: 0x%02x. %s", PROTOCOL_VERSION, version, Helper.bytesToHex(data, true)));
-                    }
-                    byte type = data[1];
-                    
-                    switch (type) {
-
-                        // handle only answer messages
-                        case MSGTYPE_ACK:
-                            msg = new MsgAck(data);
-                            break;
-                        case MSGTYPE_PROPERTY_PAGE_RESPONSE:
-                            msg = new MsgPropertyPageResponse(data);
-                            break;
-                        case MSGTYPE_PROGRAMMING_MODE_RESPONSE:
-                            msg = new MsgProgrammingModeResponse(data);
-                            break;
-                        case MSGTYPE_MEMORY_RESPONSE:
-                            msg = new MsgMemoryResponse(data);
-                            break;
-                        case MSGTYPE_DATA_READ_RESPONSE:
-                            msg = new MsgDataReadResponse(data);
-                            break;
-                        case MSGTYPE_DATA_READ_DATA:
-                            msg = new MsgDataReadData(data);
-                            break;
-
-                        // log everything else     
-                        default:
-                            throw new InvalidMessageException("Received unknown/invalid message: " + new ProgMessage(data) {
-                            });
-                        
-                    }
-                    if (msg != null) {
-                        synchronized (receivedMessages) {
-                            receivedMessages.add(msg);
-                            plog.info("Received message {} from {}. receivedMessages#={} msgs={}", msg, event.getSource(), receivedMessages.size(), receivedMessages.stream().map(Object::toString).collect(Collectors.joining(", ")));
-                            receivedMessages.notifyAll();
-                        }
-                    }
-                } catch (InvalidMessageException ex) {
-                    plog.warn("Invalid message during programming detected", ex);
+    }
+
+    public String getTargetAddress() {
+        return targetAddress;
+    }
+
+    /**
+     * @return device the answer to the request has to come from, or null
+     * for requests all devices may answer
+     */
+    private String sourceOf(ProgMessage request) {
+        return request instanceof MsgProgrammingModeRead ? null : targetAddress;
+    }
+
+    /**
+     * Detach this session from the connection. The shared listener is removed
+     * when the last session of a connection is closed.
+     */
+    public void close() {
+        hub.detach(this);
+    }
+
+    /**
+     * Set token to cancel running and further requests of this session.
+     * Cancelling fails all outstanding requests at once, blocking and
+     * asynchronous ones, with a {@link CancelledException}.
+     *
+     * @param token token, or null for none
+     */
+    public void setCancellationToken(CancellationToken token) {
+        cancellationToken = token;
+        if (token != null) {
+            token.onCancel(() -> {
+                if (cancellationToken == token) {
+                    dispatcher.failAll(new CancelledException("Cancelled"));
                 }
-                
-            }
+            });
         }
-    };
-    
-    private ProgProtocol0x01(Knx knx) {
-        this.knx = knx;
-        knx.addGroupAddressListener(PROG_GA, gal);
     }
 
     /**
-     * Wait for messages.
+     * Called by the hub for each received message routed to this session
      *
-     * @param timeout milliseconds to wait for messages
-     * @param returnOnFirstMsg if method should return on first received message
-     * @return
-     */
-    private List<ProgMessage> waitForMessage(int timeout, boolean returnOnFirstMsg) {
-        log.debug("Waiting for message. timeout={} returnOnFirst={}", timeout, returnOnFirstMsg);
-        long start = System.currentTimeMillis();
-        List<ProgMessage> list = new ArrayList<>();
-        while ((System.currentTimeMillis() - start) < timeout) {
-            synchronized (receivedMessages) {
-                try {
-                    
-                    if (receivedMessages.isEmpty()) {
-                        log.debug("Waiting for at most {}ms", timeout / 10);
-                        receivedMessages.wait(timeout / 10);
-                    } else {
-                        log.debug("messages available, continue");
-                    }
-                    
-                    if (!receivedMessages.isEmpty()) {
-                        
-                        if (returnOnFirstMsg) {
-                            list.add(receivedMessages.remove(0));
-                            log.debug("got message(s), return 1st. duration={} ms", (System.currentTimeMillis() - start));
-                            return list;
-                        } else {
-                            log.debug("got {}, clear and return", receivedMessages.size());
-                            list.addAll(receivedMessages);
-                            receivedMessages.clear();
-                        }
-                        
-                    }
-                } catch (InterruptedException ex) {
-                }
-            }
+     * @param msg received message
+     * @param source source IA of telegram
+     * @return true, if message was consumed
+     */
+    boolean dispatch(ProgMessage msg, String source) {
+        return dispatcher.dispatch(msg, source);
+    }
+
+    /**
+     * Send request and wait for exactly one response of given type. The
+     * expectation is registered before sending, so a fast response cannot get
+     * lost.
+     *
+     * @param <T>
+     * @param request message to send
+     * @param msgClass class of expected response
+     * @param source IA the response has to come from, or null for the
+     * target device
+     * @param timeout milliseconds to wait at most
+     * @return response
+     * @throws KnxException if sending failed, response timed out or got
+     * NACKed
+     */
+    private <T extends ProgMessage> T request(ProgMessage request, Class<T> msgClass, String source, int timeout) throws KnxException {
+        PendingResponse<T> pending = dispatcher.expect(msgClass, source != null ? source : targetAddress);
+        try {
+            pending.markSent();
+            sendMessage(request);
+            T msg = awaitSingle(pending, request.getType(), timeout);
+            addRttSample(request.getType(), pending);
+            return msg;
+        } finally {
+            dispatcher.remove(pending);
+        }
+    }
+
+    private <T extends ProgMessage> T awaitSingle(PendingResponse<T> pending, byte requestType, int timeout) throws KnxException {
+        log.debug("Waiting for single message [{}]. timeout={}", pending.getMessageClass().getName(), timeout);
+        List<T> list = awaitAdaptive(pending, requestType, timeout);
+        if (list.isEmpty()) {
+            throw new KnxException("Waiting for answer of type " + pending.getMessageClass().getName() + " timed out.");
+        }
+        return list.get(0);
+    }
+
+    /**
+     * Wait for response within the timeout derived from measured round trips.
+     * As the request is not repeated, a late response is still accepted until
+     * the given upper bound is reached.
+     *
+     * @param <T>
+     * @param pending expectation to wait for
+     * @param requestType message type of the request
+     * @param upperBound timeout in milliseconds at most
+     * @return received messages, may be empty
+     * @throws KnxException
+     */
+    private <T extends ProgMessage> List<T> awaitAdaptive(PendingResponse<T> pending, byte requestType, int upperBound) throws KnxException {
+        int timeout = rttEstimator.getTimeout(requestType, deviceAddress, upperBound);
+        List<T> list = pending.await(timeout);
+        if (list.isEmpty() && timeout < upperBound) {
+            log.debug("No answer within adaptive timeout of {}ms. Waiting up to {}ms.", timeout, upperBound);
+            list = pending.await(upperBound - timeout);
         }
-        log.debug("done. duration={} ms", (System.currentTimeMillis() - start));
         return list;
     }
+
+    private void addRttSample(byte requestType, PendingResponse<?> pending) {
+        double rtt = pending.getRoundTripMillis();
+        if (rtt >= 0) {
+            deviceAddress = pending.getLastSource();
+            rttEstimator.addSample(requestType, deviceAddress, rtt);
+        }
+    }
+
+    /**
+     * @return round trip times measured so far
+     */
+    public RttEstimator getRttEstimator() {
+        return rttEstimator;
+    }
     
-    private <T extends ProgMessage> T expectSingleMessage(Class<T> msgClass, int timeout) throws KnxException {
-        
-        log.debug("Waiting for single message [{}]", msgClass.getName());
-        List<ProgMessage> list = waitForMessage(timeout, true);
-        
-        if (list.isEmpty()) {
-            
-            throw new KnxException("Waiting for answer of type " + msgClass.getName() + " timed out.");
-            
-        } else if (list.size() == 1) {
-            
-            if (!(list.get(0).getClass().isAssignableFrom(msgClass))) {
-                throw new KnxException("Wrong message type received. Expected:" + msgClass + ". Got: " + list.get(0));
-            } else {
-                // all ok, return message
-                return (T) list.get(0);
+    /**
+     * Set time in which a memory or property page response equal to the
+     * previous one of the same device is treated as possible KNX link layer
+     * repetition. Default is 100ms. Repetitions are not taken as answer to
+     * requests sent after the original telegram. Acks and data read messages
+     * are never filtered, as consecutive answers are equal anyway.
+     *
+     * @param millis window in milliseconds, 0 disables duplicate detection
+     */
+    public void setDuplicateWindow(int millis) {
+        dispatcher.setDuplicateWindow(millis);
+    }
+
+    /**
+     * Set retry policy for requests of given type. Only idempotent requests
+     * can be retried: {@link #MSGTYPE_MEMORY_WRITE} and
+     * {@link #MSGTYPE_CHECKSUM_SET}. Both default to
+     * {@link RetryPolicy#DEFAULT}.
+     *
+     * @param msgType message type of request
+     * @param policy policy to use, {@link RetryPolicy#NONE} to disable retries
+     */
+    public void setRetryPolicy(byte msgType, RetryPolicy policy) {
+        if (msgType != MSGTYPE_MEMORY_WRITE && msgType != MSGTYPE_CHECKSUM_SET) {
+            throw new IllegalArgumentException(String.format("Message type 0x%02x is not idempotent and cannot be retried", msgType));
+        }
+        retryPolicies.put(msgType, policy == null ? RetryPolicy.NONE : policy);
+    }
+
+    public RetryPolicy getRetryPolicy(byte msgType) {
+        return retryPolicies.getOrDefault(msgType, RetryPolicy.NONE);
+    }
+
+    /**
+     * @return number of requests sent again due to missing answers since this
+     * session was created
+     */
+    public int getRetryCount() {
+        return retryCount.get();
+    }
+
+    /**
+     * Send idempotent request and wait for its ack. If the ack is missing, the
+     * request is sent again according to its {@link RetryPolicy}. A NACK is
+     * not retried.
+     *
+     * @param request message to send
+     * @param upperBound milliseconds to wait for an ack at most
+     * @throws KnxException if NACKed or all retries timed out
+     */
+    private void requestAckWithRetry(ProgMessage request, int upperBound) throws KnxException {
+        byte type = request.getType();
+        RetryPolicy policy = getRetryPolicy(type);
+        int retry = 0;
+        while (true) {
+            PendingResponse<MsgAck> pending = dispatcher.expect(MsgAck.class, targetAddress);
+            List<MsgAck> list;
+            try {
+                pending.markSent();
+                sendMessage(request);
+                if (retry < policy.getMaxRetries()) {
+                    list = pending.await(rttEstimator.getTimeout(type, deviceAddress, upperBound));
+                } else {
+                    list = awaitAdaptive(pending, type, upperBound);
+                }
+                if (retry == 0) {
+                    addRttSample(type, pending);
+                }
+            } finally {
+                dispatcher.remove(pending);
             }
-            
-        } else {
 
-            // more then one message received
-            StringBuilder sb = new StringBuilder();
-            for (ProgMessage msg : list) {
-                sb.append("\n" + msg.toString());
+            if (!list.isEmpty()) {
+                MsgAck ack = list.get(0);
+                if (!ack.isAcknowledged()) {
+                    throw new KnxException("Not acknowledged. " + ack.toString());
+                }
+                if (retry > 0) {
+                    drainAcks(type, upperBound);
+                }
+                return;
             }
-            
-            throw new KnxException("Received " + list.size() + " messages. Expected 1 of type " + msgClass.getName() + ". List: " + sb.toString());
-            
+            if (retry >= policy.getMaxRetries()) {
+                throw new KnxException("Waiting for answer of type " + MsgAck.class.getName() + " timed out after " + retry + " retries.");
+            }
+            retry++;
+            retryAfterBackoff(type, policy, retry, request);
         }
     }
-    
-    private <T extends ProgMessage> List<T> expectMessages(Class<T> msgClass, int timeout) throws KnxException {
-        
-        log.debug("Waiting for messages of typ [{}]", msgClass.getName());
-        List<ProgMessage> list = waitForMessage(timeout, true);
-        
-        if (list.isEmpty()) {
-            
-            throw new KnxException("Waiting for answer of type " + msgClass.getName() + " timed out.");
-            
-        } else {
-
-            // search for wrong message in list
-            for (ProgMessage progMessage : list) {
-                if (!msgClass.isAssignableFrom(progMessage.getClass())) {
-                    // more then one message received
-                    StringBuilder sb = new StringBuilder();
-                    list.forEach((msg) -> {
-                        sb.append("\n");
-                        sb.append(msg);
-                    });
-                    throw new KnxException("Received " + list.size() + " messages. Expected only one type, but got at least one extra: " + progMessage.getClass() + ". List: " + sb.toString());
-                }
-                
+
+    private void retryAfterBackoff(byte type, RetryPolicy policy, int retry, Object request) throws KnxException {
+        retryCount.incrementAndGet();
+        rttEstimator.backoff(type, deviceAddress);
+        int delay = policy.getBackoff(retry);
+        log.warn("No ack for {}. Retry {}/{} in {}ms.", request, retry, policy.getMaxRetries(), delay);
+        CancellationToken token = cancellationToken;
+        try {
+            if (token != null) {
+                token.sleep(delay);
+                token.throwIfCancelled();
+            } else {
+                Thread.sleep(delay);
             }
-            
-            return (List<T>) list;
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new CancelledException("Interrupted while waiting to retry " + request, ex);
         }
     }
-    
-    private <T extends ProgMessage> T expectSingleMessage(Class<T> msgClass) throws KnxException {
-        return expectSingleMessage(msgClass, WAIT_TIMEOUT);
+
+    /**
+     * After a retry, the ack of an earlier attempt may still be on its way.
+     * Swallow it, so it is not taken as ack of the next request.
+     */
+    private void drainAcks(byte type, int upperBound) throws KnxException {
+        PendingResponse<MsgAck> stale = dispatcher.expectAll(MsgAck.class, targetAddress);
+        try {
+            int dropped = stale.await(rttEstimator.getTimeout(type, deviceAddress, upperBound)).size();
+            if (dropped > 0) {
+                log.debug("Dropped {} late ack(s) of earlier attempts", dropped);
+            }
+        } finally {
+            dispatcher.remove(stale);
+        }
     }
     
-    private void expectAck(int timeout) throws KnxException {
-        MsgAck ack = expectSingleMessage(MsgAck.class, timeout);
+    private void requestAck(ProgMessage request, int timeout) throws KnxException {
+        MsgAck ack = request(request, MsgAck.class, null, timeout);
         if (!ack.isAcknowledged()) {
             String exMsg = "Not acknowledged. " + ack.toString();
             throw new KnxException(exMsg);
         }
     }
+
+    /**
+     * Send request and collect all responses of given type until timeout
+     * elapsed.
+     *
+     * @param <T>
+     * @param request message to send
+     * @param msgClass class of expected responses
+     * @param timeout milliseconds to collect responses
+     * @return received responses, may be empty
+     * @throws KnxException
+     */
+    private <T extends ProgMessage> List<T> requestAll(ProgMessage request, Class<T> msgClass, int timeout) throws KnxException {
+        return requestAll(request, msgClass, timeout, 0, 0, null);
+    }
+
+    /**
+     * Send request and collect responses of given type until the expected
+     * number is received, no response arrived for the quiet period or the
+     * timeout elapsed.
+     *
+     * @param <T>
+     * @param request message to send
+     * @param msgClass class of expected responses
+     * @param timeout milliseconds to collect responses at most
+     * @param expectedCount number of responses after which collecting ends,
+     * 0 for no limit
+     * @param quietPeriod milliseconds without a new response after which
+     * collecting ends, 0 to wait for the whole timeout
+     * @param listener gets each response as soon as it arrives, may be null
+     * @return received responses, may be empty
+     * @throws KnxException
+     */
+    private <T extends ProgMessage> List<T> requestAll(ProgMessage request, Class<T> msgClass, int timeout, int expectedCount, int quietPeriod, Consumer<? super T> listener) throws KnxException {
+        PendingResponse<T> pending = dispatcher.expect(msgClass, null, null, expectedCount > 0 ? expectedCount : Integer.MAX_VALUE);
+        pending.setListener(listener);
+        try {
+            sendMessage(request);
+            log.debug("Collecting messages of type [{}]. timeout={} expectedCount={} quietPeriod={}", msgClass.getName(), timeout, expectedCount, quietPeriod);
+            return pending.await(timeout, quietPeriod);
+        } finally {
+            dispatcher.remove(pending);
+        }
+    }
     
-    private void expectAck() throws KnxException {
-        expectAck(WAIT_TIMEOUT);
+    /**
+     * Send request without blocking. The returned future is completed from
+     * the receiving thread, so dependent stages should not block.
+     *
+     * @param <T>
+     * @param request message to send
+     * @param msgClass class of expected responses
+     * @param expectedCount number of responses after which the future is
+     * completed, 0 for no limit
+     * @param timeout milliseconds after which the future is completed with
+     * the responses received so far
+     * @param sampleRtt true, to use the first response as round trip sample
+     * @return future with received responses, may be empty
+     */
+    private <T extends ProgMessage> CompletableFuture<List<T>> sendAsync(ProgMessage request, Class<T> msgClass, int expectedCount, int timeout, boolean sampleRtt) {
+        PendingResponse<T> pending = dispatcher.expect(msgClass, sourceOf(request), null, expectedCount > 0 ? expectedCount : Integer.MAX_VALUE);
+        CompletableFuture<List<T>> result = pending.future().whenComplete((list, ex) -> {
+            dispatcher.remove(pending);
+            if (sampleRtt) {
+                addRttSample(request.getType(), pending);
+            }
+        });
+        CompletableFuture.delayedExecutor(timeout, TimeUnit.MILLISECONDS).execute(pending::expire);
+        try {
+            pending.markSent();
+            sendMessage(request);
+        } catch (KnxException ex) {
+            pending.fail(ex);
+        }
+        return result;
+    }
+
+    /**
+     * Creates a request message. Message constructors may throw, which
+     * asynchronous methods report via the returned future.
+     */
+    @FunctionalInterface
+    private interface MessageFactory {
+
+        ProgMessage create() throws KnxException;
+    }
+
+    private <T extends ProgMessage> CompletableFuture<T> requestAsync(MessageFactory factory, Class<T> msgClass, int timeout) {
+        ProgMessage request;
+        try {
+            request = factory.create();
+        } catch (KnxException ex) {
+            return CompletableFuture.failedFuture(ex);
+        }
+        return sendAsync(request, msgClass, 1, timeout, true).thenApply(list -> {
+            if (list.isEmpty()) {
+                throw new CompletionException(new KnxException("Waiting for answer of type " + msgClass.getName() + " timed out."));
+            }
+            return list.get(0);
+        });
+    }
+
+    private CompletableFuture<Void> requestAckAsync(MessageFactory factory, int timeout) {
+        return requestAsync(factory, MsgAck.class, timeout).thenAccept(ack -> {
+            if (!ack.isAcknowledged()) {
+                throw new CompletionException(new KnxException("Not acknowledged. " + ack.toString()));
+            }
+        });
+    }
+
+    /**
+     * Asynchronous variant of {@link #requestAckWithRetry(ProgMessage, int)}
+     */
+    private CompletableFuture<Void> requestAckWithRetryAsync(MessageFactory factory, int upperBound) {
+        try {
+            return requestAckWithRetryAsync(factory.create(), upperBound, 0);
+        } catch (KnxException ex) {
+            return CompletableFuture.failedFuture(ex);
+        }
+    }
+
+    private CompletableFuture<Void> requestAckWithRetryAsync(ProgMessage request, int upperBound, int retry) {
+        byte type = request.getType();
+        RetryPolicy policy = getRetryPolicy(type);
+        int timeout = retry < policy.getMaxRetries() ? rttEstimator.getTimeout(type, deviceAddress, upperBound) : upperBound;
+        return sendAsync(request, MsgAck.class, 1, timeout, retry == 0).thenCompose(list -> {
+            if (!list.isEmpty()) {
+                MsgAck ack = list.get(0);
+                if (!ack.isAcknowledged()) {
+                    throw new CompletionException(new KnxException("Not acknowledged. " + ack.toString()));
+                }
+                return retry > 0 ? drainAcksAsync(type, upperBound) : CompletableFuture.completedFuture(null);
+            }
+            if (retry >= policy.getMaxRetries()) {
+                throw new CompletionException(new KnxException("Waiting for answer of type " + MsgAck.class.getName() + " timed out after " + retry + " retries."));
+            }
+            retryCount.incrementAndGet();
+            rttEstimator.backoff(type, deviceAddress);
+            int delay = policy.getBackoff(retry + 1);
+            log.warn("No ack for {}. Retry {}/{} in {}ms.", request, retry + 1, policy.getMaxRetries(), delay);
+            return CompletableFuture.supplyAsync(() -> null, CompletableFuture.delayedExecutor(delay, TimeUnit.MILLISECONDS))
+                    .thenCompose(v -> requestAckWithRetryAsync(request, upperBound, retry + 1));
+        });
+    }
+
+    private CompletableFuture<Void> drainAcksAsync(byte type, int upperBound) {
+        PendingResponse<MsgAck> stale = dispatcher.expectAll(MsgAck.class, targetAddress);
+        CompletableFuture.delayedExecutor(rttEstimator.getTimeout(type, deviceAddress, upperBound), TimeUnit.MILLISECONDS).execute(stale::expire);
+        return stale.future().thenAccept(list -> {
+            dispatcher.remove(stale);
+            if (!list.isEmpty()) {
+                log.debug("Dropped {} late ack(s) of earlier attempts", list.size());
+            }
+        });
     }
     
     private void sendMessage(ProgMessage msg) throws KnxException {
+        CancellationToken token = cancellationToken;
+        if (token != null) {
+            token.throwIfCancelled();
+        }
         plog.info("Sending: {}", msg);
         byte[] msgData = msg.data;
         
-        log.trace("Sending message \n"
-                + "ProtocolVersion: {}\n"
-                + "MsgTypeId      : {}\n"
-                + "data[2..13]    : {} {} {} {} {} {} {} {} {} {} {} {}", new Object[]{
-                    String.format("%02X", msgData[0]),
-                    String.format("%02X", msgData[1]),
-                    String.format("%02X", msgData[2]),
-                    String.format("%02X", msgData[3]),
-                    String.format("%02X", msgData[4]),
-                    String.format("%02X", msgData[5]),
-                    String.format("%02X", msgData[6]),
-                    String.format("%02X", msgData[7]),
-                    String.format("%02X", msgData[8]),
-                    String.format("%02X", msgData[9]),
-                    String.format("%02X", msgData[10]),
-                    String.format("%02X", msgData[11]),
-                    String.format("%02X", msgData[12]),
-                    String.format("%02X", msgData[13]),});
-        knx.writeRaw(false, PROG_GA, msgData);
+        if (log.isTraceEnabled()) {
+            log.trace("Sending message \n"
+                    + "ProtocolVersion: {}\n"
+                    + "MsgTypeId      : {}\n"
+                    + "data[2..13]    : {}", String.format("%02X", msgData[0]), String.format("%02X", msgData[1]), Helper.bytesToHex(msgData, 2, 12, true));
+        }
+        hub.write(msgData);
     }
 
     /**
@@ -334,53 +657,297 @@ public class ProgProtocol0x01 {
      * @throws KnxException
      */
     public List<String> findDevicesInProgMode() throws KnxException {
-        sendMessage(new MsgProgrammingModeRead());
-        List<ProgMessage> waitForMessage = waitForMessage(WAIT_TIMEOUT, false);
+        return findDevicesInProgMode(0, 0);
+    }
+
+    /**
+     * @param expectedCount number of devices after which searching ends, 0
+     * for no limit
+     * @param quietPeriod milliseconds without new answer after which
+     * searching ends, 0 to wait for the whole timeout
+     * @return addresses of devices in programming mode
+     * @throws KnxException
+     */
+    public List<String> findDevicesInProgMode(int expectedCount, int quietPeriod) throws KnxException {
+        List<MsgProgrammingModeResponse> responses = requestAll(new MsgProgrammingModeRead(), MsgProgrammingModeResponse.class, WAIT_TIMEOUT, expectedCount, quietPeriod, null);
         List<String> devicesFound = new ArrayList<>();
         
-        for (ProgMessage msg : waitForMessage) {
-            if (msg.getType() == MSGTYPE_PROGRAMMING_MODE_RESPONSE) {
-                MsgProgrammingModeResponse mpr = (MsgProgrammingModeResponse) msg;
-                devicesFound.add(mpr.getAddress());
-            }
+        for (MsgProgrammingModeResponse mpr : responses) {
+            devicesFound.add(mpr.getAddress());
         }
         return devicesFound;
     }
     
     public byte[] propertyPageRead(String individualAddress, int pagenum) throws KnxException {
-        sendMessage(new MsgPropertyPageRead(individualAddress, pagenum));
-        MsgPropertyPageResponse msg = expectSingleMessage(MsgPropertyPageResponse.class);
+        MsgPropertyPageResponse msg = request(new MsgPropertyPageRead(individualAddress, pagenum), MsgPropertyPageResponse.class, individualAddress, WAIT_TIMEOUT);
         return msg.getData();
     }
     
     public void checksumSet(ChecksumIdentifier identifier, long crc32) throws KnxException {
-        sendMessage(new MsgChecksumSet(identifier, crc32));
-        expectAck(2 * WAIT_TIMEOUT); // writing to memory may take some time
+        requestAckWithRetry(new MsgChecksumSet(identifier, crc32), 2 * WAIT_TIMEOUT); // writing to memory may take some time
     }
     
     public void memoryWrite(int memoryAddress, byte[] data) throws KnxException {
-        sendMessage(new MsgMemoryWrite(memoryAddress, data));
-        expectAck(2 * WAIT_TIMEOUT); // writing data to memory may take some time
+        requestAckWithRetry(new MsgMemoryWrite(memoryAddress, data), 2 * WAIT_TIMEOUT); // writing data to memory may take some time
+    }
+
+    /**
+     * Set number of memory write messages that may be in flight at once. 1
+     * (default) means stop-and-wait. The window drops back to 1 by itself as soon as the
+     * device misses an ack.
+     *
+     * @param windowSize window size, at least 1
+     */
+    public void setMemoryWriteWindowSize(int windowSize) {
+        if (windowSize < 1) {
+            throw new IllegalArgumentException("window size must be at least 1");
+        }
+        memoryWriteWindowSize = windowSize;
+    }
+
+    public int getMemoryWriteWindowSize() {
+        return memoryWriteWindowSize;
+    }
+
+    /**
+     * Write data of any length to memory, split into messages of at most
+     * {@link #MEMORY_READWRITE_BYTES_MAX} bytes. Up to
+     * {@link #getMemoryWriteWindowSize()} messages are in flight at once.
+     * <p>
+     * Acks carry no address, so they are assigned to the writes in sending
+     * order, and a window only counts as done when all of its acks are
+     * received. If one is missing, late acks of the window are awaited and
+     * dropped, then the whole window is written again (writes to a fixed
+     * address are idempotent) and the window size falls back to 1.
+     * At window size 1, a missing ack is retried according to the
+     * {@link RetryPolicy} of {@link #MSGTYPE_MEMORY_WRITE}.
+     *
+     * @param memoryAddress address to start writing at
+     * @param data data to write
+     * @param progress is called with the number of newly acknowledged
+     * messages, may be null
+     * @throws KnxException if device NACKs or does not respond
+     */
+    public void memoryWrite(int memoryAddress, byte[] data, IntConsumer progress) throws KnxException {
+        int frameCount = (int) Helper.roundUp(data.length, MEMORY_READWRITE_BYTES_MAX);
+        RetryPolicy policy = getRetryPolicy(MSGTYPE_MEMORY_WRITE);
+        int done = 0;
+        int retry = 0;
+
+        while (done < frameCount) {
+            int window = Math.min(memoryWriteWindowSize, frameCount - done);
+            List<PendingResponse<MsgAck>> acks = new ArrayList<>(window);
+            boolean abandoned = false;
+            try {
+                for (int i = done; i < done + window; i++) {
+                    int offset = i * MEMORY_READWRITE_BYTES_MAX;
+                    int length = Math.min(MEMORY_READWRITE_BYTES_MAX, data.length - offset);
+                    PendingResponse<MsgAck> pending = dispatcher.expect(MsgAck.class, targetAddress);
+                    acks.add(pending);
+                    pending.markSent();
+                    sendMessage(new MsgMemoryWrite(memoryAddress + offset, data, offset, length));
+                }
+                boolean complete = true;
+                for (PendingResponse<MsgAck> pending : acks) {
+                    List<MsgAck> list = awaitAdaptive(pending, MSGTYPE_MEMORY_WRITE, 2 * WAIT_TIMEOUT); // writing data to memory may take some time
+                    if (list.isEmpty()) {
+                        complete = false;
+                        break;
+                    }
+                    MsgAck ack = list.get(0);
+                    if (!ack.isAcknowledged()) {
+                        throw new KnxException("Not acknowledged. " + ack.toString());
+                    }
+                }
+                if (window == 1 && retry == 0) {
+                    // pipelined acks include the time spent behind the previous writes
+                    addRttSample(MSGTYPE_MEMORY_WRITE, acks.get(0));
+                }
+                if (!complete) {
+                    if (window == 1) {
+                        if (retry >= policy.getMaxRetries()) {
+                            throw new KnxException("Waiting for answer of type " + MsgAck.class.getName() + " timed out after " + retry + " retries.");
+                        }
+                        retry++;
+                        retryAfterBackoff(MSGTYPE_MEMORY_WRITE, policy, retry, String.format("memory write at 0x%04x", memoryAddress + done * MEMORY_READWRITE_BYTES_MAX));
+                        continue;
+                    }
+                    retryCount.incrementAndGet();
+                    log.warn("Missing ack within window of {} memory writes at {}. Device cannot keep up, falling back to window size 1.",
+                            window, String.format("0x%04x", memoryAddress + done * MEMORY_READWRITE_BYTES_MAX));
+                    memoryWriteWindowSize = 1;
+                    abandoned = true;
+                }
+            } finally {
+                acks.forEach(dispatcher::remove);
+            }
+            if (abandoned) {
+                // acks of the abandoned window may still arrive, they must
+                // not be taken as acks of the writes sent again
+                drainAcks(MSGTYPE_MEMORY_WRITE, 2 * WAIT_TIMEOUT);
+                continue;
+            }
+            if (retry > 0) {
+                drainAcks(MSGTYPE_MEMORY_WRITE, 2 * WAIT_TIMEOUT);
+                retry = 0;
+            }
+            done += window;
+            if (progress != null) {
+                progress.accept(window);
+            }
+        }
     }
     
     public void dataWritePrepare(byte dataType, byte dataId, long size) throws KnxException {
-        sendMessage(new MsgDataWritePrepare(dataType, dataId, size));
-        expectAck(2 * WAIT_TIMEOUT);
+        requestAck(new MsgDataWritePrepare(dataType, dataId, size), 2 * WAIT_TIMEOUT);
+    }
+
+    /**
+     * Prepare a data write of {@link Lzss} compressed data. The device
+     * decompresses while receiving, {@link #dataWriteFinish(CRC32)} takes the
+     * CRC of the uncompressed data. Devices without support for compression
+     * store the compressed data and fail with a CRC mismatch at the end, so
+     * check the capability flags of the device info property page first.
+     *
+     * @param dataType data type
+     * @param dataId data id
+     * @param size number of compressed bytes that will be sent
+     * @param uncompressedSize number of bytes after decompression
+     * @throws KnxException
+     */
+    public void dataWritePrepareCompressed(byte dataType, byte dataId, long size, long uncompressedSize) throws KnxException {
+        requestAck(new MsgDataWritePrepare(dataType, dataId, size, uncompressedSize), 2 * WAIT_TIMEOUT);
     }
     
+    /**
+     * Continue an interrupted raw data write of the same type, id and size.
+     * The device keeps the first offset bytes it received and appends the
+     * following data writes to them, {@link #dataWriteFinish(CRC32)} takes
+     * the CRC of all data. A device that has no such transfer, or fewer
+     * bytes of it, answers with a NACK. Only send to devices that report
+     * this capability in their device info property page.
+     *
+     * @param dataType data type
+     * @param dataId data id
+     * @param size number of bytes of all data
+     * @param offset number of bytes the device already acknowledged
+     * @return true, if the device continues at offset, false if the transfer
+     * has to be started over with {@link #dataWritePrepare(byte, byte, long)}
+     * @throws KnxException
+     */
+    public boolean dataWritePrepareResume(byte dataType, byte dataId, long size, long offset) throws KnxException {
+        MsgAck ack = request(MsgDataWritePrepare.resume(dataType, dataId, size, offset), MsgAck.class, null, 2 * WAIT_TIMEOUT);
+        return ack.isAcknowledged();
+    }
+
     public void dataWrite(int count, byte[] data) throws KnxException {
-        sendMessage(new MsgDataWrite(count, data));
-        expectAck(5 * WAIT_TIMEOUT);
+        requestAck(new MsgDataWrite(count, data), 5 * WAIT_TIMEOUT);
     }
     
+    /**
+     * Set number of data write messages that may be in flight at once, see
+     * {@link #dataWrite(InputStream, long, CRC32, IntConsumer)}. 1 (default)
+     * means stop-and-wait.
+     *
+     * @param windowSize window size, at least 1
+     */
+    public void setDataWriteWindowSize(int windowSize) {
+        if (windowSize < 1) {
+            throw new IllegalArgumentException("window size must be at least 1");
+        }
+        dataWriteWindowSize = windowSize;
+    }
+
+    public int getDataWriteWindowSize() {
+        return dataWriteWindowSize;
+    }
+
+    /**
+     * Send the data of a prepared data write, split into messages of at most
+     * {@link #DATA_WRITE_BYTES_MAX} bytes, with up to
+     * {@link #getDataWriteWindowSize()} messages in flight.
+     * <p>
+     * The device appends each message to the data, and neither the messages
+     * nor the acks carry a position. Acks are assigned in sending order, but
+     * a message whose ack is missing cannot be sent again on its own, as the
+     * device may have appended it already. In that case the window size falls
+     * back to 1, late acks of the window are awaited and dropped, and false
+     * is returned. The device has at least the acknowledged messages: the
+     * transfer has to be continued after them with
+     * {@link #dataWritePrepareResume(byte, byte, long, long)}, or restarted
+     * with {@link #dataWritePrepare(byte, byte, long)}.
+     *
+     * @param in data to send
+     * @param length number of bytes to send
+     * @param crc32 updated with all data sent, for
+     * {@link #dataWriteFinish(CRC32)}
+     * @param progress is called with the number of newly acknowledged
+     * messages, may be null
+     * @return true, if all messages are acknowledged
+     * @throws KnxException if device NACKs, or does not respond at window
+     * size 1
+     * @throws IOException if data cannot be read
+     */
+    public boolean dataWrite(InputStream in, long length, CRC32 crc32, IntConsumer progress) throws KnxException, IOException {
+        int window = dataWriteWindowSize;
+        Deque<PendingResponse<MsgAck>> inFlight = new ArrayDeque<>(window);
+        long sent = 0;
+        try {
+            while (sent < length || !inFlight.isEmpty()) {
+                while (sent < length && inFlight.size() < window) {
+                    int count = (int) Math.min(DATA_WRITE_BYTES_MAX, length - sent);
+                    byte[] chunk = in.readNBytes(count);
+                    if (chunk.length != count) {
+                        throw new IOException("Unexpected end of data after " + (sent + chunk.length) + " of " + length + " bytes");
+                    }
+                    crc32.update(chunk);
+                    PendingResponse<MsgAck> pending = dispatcher.expect(MsgAck.class, targetAddress);
+                    inFlight.add(pending);
+                    pending.markSent();
+                    sendMessage(new MsgDataWrite(count, chunk));
+                    sent += count;
+                }
+                PendingResponse<MsgAck> pending = inFlight.peek();
+                List<MsgAck> list = awaitAdaptive(pending, MSGTYPE_DATA_WRITE, 5 * WAIT_TIMEOUT);
+                if (list.isEmpty()) {
+                    if (window == 1) {
+                        throw new KnxException("Waiting for answer of type " + MsgAck.class.getName() + " timed out.");
+                    }
+                    retryCount.incrementAndGet();
+                    log.warn("Missing ack within window of {} data writes after {} bytes. Falling back to window size 1, transfer has to be continued.", window, sent);
+                    dataWriteWindowSize = 1;
+                    inFlight.forEach(dispatcher::remove);
+                    inFlight.clear();
+                    // acks of the window may still arrive, they must not be
+                    // taken as ack of the next prepare or finish
+                    drainAcks(MSGTYPE_DATA_WRITE, 5 * WAIT_TIMEOUT);
+                    return false;
+                }
+                MsgAck ack = list.get(0);
+                if (!ack.isAcknowledged()) {
+                    throw new KnxException("Not acknowledged. " + ack.toString());
+                }
+                if (window == 1) {
+                    // pipelined acks include the time spent behind the previous writes
+                    addRttSample(MSGTYPE_DATA_WRITE, pending);
+                }
+                dispatcher.remove(inFlight.poll());
+                if (progress != null) {
+                    progress.accept(1);
+                }
+            }
+        } finally {
+            inFlight.forEach(dispatcher::remove);
+        }
+        return true;
+    }
+
     public void dataWriteFinish(CRC32 crc32) throws KnxException {
-        sendMessage(new MsgDataWriteFinish(crc32));
-        expectAck(5 * WAIT_TIMEOUT);
+        requestAck(new MsgDataWriteFinish(crc32), 5 * WAIT_TIMEOUT);
     }
     
     public void dataRemove(byte dataType, byte dataId) throws KnxException {
-        sendMessage(new MsgDataRemove(dataType, dataId));
-        expectAck(2 * WAIT_TIMEOUT);
+        requestAck(new MsgDataRemove(dataType, dataId), 2 * WAIT_TIMEOUT);
     }
 
     /**
@@ -394,9 +961,8 @@ public class ProgProtocol0x01 {
      */
     public DataReadResponse startDataRead(byte dataType, byte dataId) throws KnxException, FileNotFoundException, IOException {
         log.debug("initiate reading data...");
-        sendMessage(new MsgDataRead(dataType, dataId));
-        MsgDataReadResponse drr = expectSingleMessage(MsgDataReadResponse.class, 5 * WAIT_TIMEOUT);
-        sendAck();
+        MsgDataReadResponse drr = request(new MsgDataRead(dataType, dataId), MsgDataReadResponse.class, null, 5 * WAIT_TIMEOUT);
+        ackDataRead();
         return new DataReadResponse(drr.getSize(), 0);
     }
 
@@ -408,11 +974,27 @@ public class ProgProtocol0x01 {
      * @throws KnxException
      */
     public byte[] dataRead() throws KnxException, FileNotFoundException, IOException {
-        MsgDataReadData drd = expectSingleMessage(MsgDataReadData.class, 5 * WAIT_TIMEOUT);
-        sendAck();
+        MsgDataReadData drd = awaitDataRead(MsgDataReadData.class);
+        ackDataRead();
         return drd.getReceivedData();
     }
 
+    /**
+     * Like {@link #dataRead()}, but copies the received data into the given
+     * buffer instead of a new array.
+     *
+     * @param dst buffer with at least {@link #DATA_READ_BYTES_MAX} bytes
+     * remaining
+     * @return number of bytes received
+     * @throws KnxException
+     */
+    public int dataRead(ByteBuffer dst) throws KnxException {
+        MsgDataReadData drd = awaitDataRead(MsgDataReadData.class);
+        ackDataRead();
+        drd.getReceivedData(dst);
+        return drd.getCount();
+    }
+
     /**
      * waits for data to receive. this call is expected to block until data is
      * received, although the blocking time is veeeeery short.
@@ -421,50 +1003,317 @@ public class ProgProtocol0x01 {
      * @throws KnxException
      */
     public DataReadResponse dataReadFinalize() throws KnxException, FileNotFoundException, IOException {
-        MsgDataReadResponse drr = expectSingleMessage(MsgDataReadResponse.class, 5 * WAIT_TIMEOUT);
+        MsgDataReadResponse drr = awaitDataRead(MsgDataReadResponse.class);
         sendAck();
         return new DataReadResponse(drr.getSize(), drr.getCrc32());
     }
     
     public byte[] memoryRead(int memoryAddress, int length) throws KnxException {
-        sendMessage(new MsgMemoryRead(memoryAddress, length));
-        MsgMemoryResponse msg = expectSingleMessage(MsgMemoryResponse.class, WAIT_TIMEOUT * 2); // reading from memory may take some time
+        MsgMemoryResponse msg = request(new MsgMemoryRead(memoryAddress, length), MsgMemoryResponse.class, null, WAIT_TIMEOUT * 2); // reading from memory may take some time
         return msg.getData();
     }
+
+    /**
+     * Set number of memory reads that may be in flight at once. 1 (default)
+     * means stop-and-wait. The window drops back to 1 by itself as soon as
+     * the device misses a read.
+     *
+     * @param windowSize window size, at least 1
+     */
+    public void setMemoryReadWindowSize(int windowSize) {
+        if (windowSize < 1) {
+            throw new IllegalArgumentException("window size must be at least 1");
+        }
+        memoryReadWindowSize = windowSize;
+    }
+
+    public int getMemoryReadWindowSize() {
+        return memoryReadWindowSize;
+    }
+
+    /**
+     * Read memory of any length, split into reads of at most
+     * {@link #MEMORY_READWRITE_BYTES_MAX} bytes. Up to
+     * {@link #getMemoryReadWindowSize()} reads are in flight at once. Each
+     * response is matched to its read by address and length and copied into
+     * the result buffer at its position.
+     *
+     * @param memoryAddress address to start reading at
+     * @param length number of bytes to read
+     * @param progress is called with the number of newly received responses,
+     * may be null
+     * @return memory content
+     * @throws KnxException if device NACKs or does not respond
+     */
+    public byte[] memoryRead(int memoryAddress, int length, IntConsumer progress) throws KnxException {
+        byte[] result = new byte[length];
+        int frameCount = (int) Helper.roundUp(length, MEMORY_READWRITE_BYTES_MAX);
+        List<PendingResponse<MsgMemoryResponse>> pending = new ArrayList<>(Collections.nCopies(frameCount, null));
+        long[] firstSent = new long[frameCount];
+        boolean[] repeated = new boolean[frameCount];
+        int upperBound = 2 * WAIT_TIMEOUT; // reading from memory may take some time
+        int sent = 0;
+
+        try {
+            for (int i = 0; i < frameCount; i++) {
+                while (sent < frameCount && sent < i + memoryReadWindowSize) {
+                    firstSent[sent] = System.nanoTime();
+                    pending.set(sent, sendMemoryRead(memoryAddress, length, sent));
+                    sent++;
+                }
+
+                PendingResponse<MsgMemoryResponse> p = pending.get(i);
+                long waited = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - firstSent[i]);
+                int timeout = rttEstimator.getTimeout(MSGTYPE_MEMORY_READ, deviceAddress, upperBound);
+                List<MsgMemoryResponse> list = p.await((int) Math.max(0, Math.min(timeout, upperBound - waited)));
+                dispatcher.remove(p);
+                pending.set(i, null);
+
+                if (list.isEmpty()) {
+                    // reads are matched by address, so asking again is safe even if the first answer is just late
+                    if (TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - firstSent[i]) >= upperBound) {
+                        throw new KnxException("Waiting for answer of type " + MsgMemoryResponse.class.getName() + " timed out.");
+                    }
+                    rttEstimator.backoff(MSGTYPE_MEMORY_READ, deviceAddress);
+                    if (memoryReadWindowSize > 1) {
+                        log.warn("Missing response for memory read at {}. Device cannot keep up, falling back to window size 1.",
+                                String.format("0x%04x", memoryAddress + i * MEMORY_READWRITE_BYTES_MAX));
+                        memoryReadWindowSize = 1;
+                    } else {
+                        log.debug("No response for memory read at {} after {}ms. Requesting again.",
+                                String.format("0x%04x", memoryAddress + i * MEMORY_READWRITE_BYTES_MAX), timeout);
+                    }
+                    pending.set(i, sendMemoryRead(memoryAddress, length, i));
+                    repeated[i] = true;
+                    i--;
+                    continue;
+                }
+                if (!repeated[i]) {
+                    addRttSample(MSGTYPE_MEMORY_READ, p);
+                }
+
+                list.get(0).copyData(result, i * MEMORY_READWRITE_BYTES_MAX);
+                if (progress != null) {
+                    progress.accept(1);
+                }
+            }
+        } finally {
+            pending.stream().filter(p -> p != null).forEach(dispatcher::remove);
+        }
+        return result;
+    }
+
+    private PendingResponse<MsgMemoryResponse> sendMemoryRead(int memoryAddress, int length, int frame) throws KnxException {
+        int offset = frame * MEMORY_READWRITE_BYTES_MAX;
+        int address = (memoryAddress + offset) & 0xFFFF;
+        int count = Math.min(MEMORY_READWRITE_BYTES_MAX, length - offset);
+        PendingResponse<MsgMemoryResponse> p = dispatcher.expect(MsgMemoryResponse.class, targetAddress,
+                msg -> msg.getAddress() == address && msg.getCount() == count, 1);
+        p.markSent();
+        try {
+            sendMessage(new MsgMemoryRead(address, count));
+        } catch (KnxException ex) {
+            dispatcher.remove(p);
+            throw ex;
+        }
+        return p;
+    }
     
     public void programmingModeWrite(String individualAddress, boolean progMode) throws KnxException {
-        sendMessage(new MsgProgrammingModeWrite(individualAddress, progMode));
-        expectAck(WAIT_TIMEOUT); // give the sketch enough time to respond and set prog-mode (which should pause the device-logic)
+        requestAck(new MsgProgrammingModeWrite(individualAddress, progMode), WAIT_TIMEOUT); // give the sketch enough time to respond and set prog-mode (which should pause the device-logic)
     }
     
+    /**
+     * @return milliseconds {@link #programmingModeRead(int, int, Consumer)}
+     * waits for answers at most
+     */
+    public int getProgrammingModeReadTimeout() {
+        return WAIT_TIMEOUT;
+    }
+
     public List<String> programmingModeRead() throws KnxException {
-        sendMessage(new MsgProgrammingModeRead());
+        return programmingModeRead(0, 0, null);
+    }
+
+    /**
+     * Read addresses of devices in programming mode. Returns as soon as
+     * <code>expectedCount</code> devices answered or no device answered for
+     * <code>quietPeriod</code> milliseconds, at the latest after the usual
+     * timeout.
+     *
+     * @param expectedCount number of answers after which reading ends, 0 for
+     * no limit
+     * @param quietPeriod milliseconds without new answer after which reading
+     * ends, 0 to wait for the whole timeout
+     * @param listener gets the address of each device as soon as it answers,
+     * may be null
+     * @return addresses of devices in programming mode
+     * @throws KnxException
+     */
+    public List<String> programmingModeRead(int expectedCount, int quietPeriod, Consumer<String> listener) throws KnxException {
         List<String> addresses = new ArrayList<>();
         try {
             // there may be responses, but maybe not. who knows. it's okay when nothing is responding.
-            List<MsgProgrammingModeResponse> messages = expectMessages(MsgProgrammingModeResponse.class, WAIT_TIMEOUT);
+            List<MsgProgrammingModeResponse> messages = requestAll(new MsgProgrammingModeRead(), MsgProgrammingModeResponse.class, WAIT_TIMEOUT, expectedCount, quietPeriod,
+                    listener == null ? null : msg -> notifyAddress(msg, listener));
             for (MsgProgrammingModeResponse msg : messages) {
                 addresses.add(msg.getAddress());
             }
+        } catch (CancelledException ex) {
+            throw ex;
         } catch (KnxException ex) {
             log.warn("Exception during waiting for progmoderesponse messages", ex);
         }
         return addresses;
     }
     
+    private void notifyAddress(MsgProgrammingModeResponse msg, Consumer<String> listener) {
+        try {
+            listener.accept(msg.getAddress());
+        } catch (KnxException ex) {
+            log.warn("Not able to parse address of " + msg, ex);
+        }
+    }
+    
     public void unload(boolean factoryreset, boolean ia, boolean co, boolean params, boolean datastorage) throws KnxException {
-        sendMessage(new MsgUnload(factoryreset, ia, co, params, datastorage));
-        expectAck(60 * WAIT_TIMEOUT); // erasing can take very long
+        requestAck(new MsgUnload(factoryreset, ia, co, params, datastorage), 60 * WAIT_TIMEOUT); // erasing can take very long
     }
     
     public void restart(String individualAddress) throws KnxException {
-        sendMessage(new MsgRestart(individualAddress));
-        expectAck();
+        requestAck(new MsgRestart(individualAddress), WAIT_TIMEOUT);
+    }
+    
+    /*
+     * Asynchronous variants. They do not block, the futures are completed from
+     * the receiving thread. Errors are reported as KnxException, wrapped in a
+     * CompletionException.
+     */
+
+    public CompletableFuture<byte[]> propertyPageReadAsync(String individualAddress, int pagenum) {
+        return requestAsync(() -> new MsgPropertyPageRead(individualAddress, pagenum), MsgPropertyPageResponse.class, WAIT_TIMEOUT).thenApply(MsgPropertyPageResponse::getData);
+    }
+
+    public CompletableFuture<Void> checksumSetAsync(ChecksumIdentifier identifier, long crc32) {
+        return requestAckWithRetryAsync(() -> new MsgChecksumSet(identifier, crc32), 2 * WAIT_TIMEOUT);
+    }
+
+    /**
+     * Write up to {@link #MEMORY_READWRITE_BYTES_MAX} bytes without blocking
+     *
+     * @param memoryAddress address to write to
+     * @param data data to write
+     * @return future completed when the write is acknowledged
+     */
+    public CompletableFuture<Void> memoryWriteAsync(int memoryAddress, byte[] data) {
+        return requestAckWithRetryAsync(() -> new MsgMemoryWrite(memoryAddress, data), 2 * WAIT_TIMEOUT);
+    }
+
+    /**
+     * Read up to {@link #MEMORY_READWRITE_BYTES_MAX} bytes without blocking
+     *
+     * @param memoryAddress address to read from
+     * @param length number of bytes to read
+     * @return future with memory content
+     */
+    public CompletableFuture<byte[]> memoryReadAsync(int memoryAddress, int length) {
+        return requestAsync(() -> new MsgMemoryRead(memoryAddress, length), MsgMemoryResponse.class, 2 * WAIT_TIMEOUT).thenApply(MsgMemoryResponse::getData);
+    }
+
+    public CompletableFuture<Void> dataWritePrepareAsync(byte dataType, byte dataId, long size) {
+        return requestAckAsync(() -> new MsgDataWritePrepare(dataType, dataId, size), 2 * WAIT_TIMEOUT);
+    }
+
+    public CompletableFuture<Void> dataWriteAsync(int count, byte[] data) {
+        return requestAckAsync(() -> new MsgDataWrite(count, data), 5 * WAIT_TIMEOUT);
+    }
+
+    public CompletableFuture<Void> dataWriteFinishAsync(CRC32 crc32) {
+        return requestAckAsync(() -> new MsgDataWriteFinish(crc32), 5 * WAIT_TIMEOUT);
+    }
+
+    public CompletableFuture<Void> dataRemoveAsync(byte dataType, byte dataId) {
+        return requestAckAsync(() -> new MsgDataRemove(dataType, dataId), 2 * WAIT_TIMEOUT);
+    }
+
+    public CompletableFuture<Void> programmingModeWriteAsync(String individualAddress, boolean progMode) {
+        return requestAckAsync(() -> new MsgProgrammingModeWrite(individualAddress, progMode), WAIT_TIMEOUT);
+    }
+
+    /**
+     * @param expectedCount number of answers after which the future is
+     * completed, 0 to collect answers for the whole timeout
+     * @return future with addresses of devices in programming mode
+     */
+    public CompletableFuture<List<String>> programmingModeReadAsync(int expectedCount) {
+        return sendAsync(new MsgProgrammingModeRead(), MsgProgrammingModeResponse.class, expectedCount, WAIT_TIMEOUT, false).thenApply(messages -> {
+            List<String> addresses = new ArrayList<>();
+            for (MsgProgrammingModeResponse msg : messages) {
+                try {
+                    addresses.add(msg.getAddress());
+                } catch (KnxException ex) {
+                    throw new CompletionException(ex);
+                }
+            }
+            return addresses;
+        });
+    }
+
+    public CompletableFuture<Void> unloadAsync(boolean factoryreset, boolean ia, boolean co, boolean params, boolean datastorage) {
+        return requestAckAsync(() -> new MsgUnload(factoryreset, ia, co, params, datastorage), 60 * WAIT_TIMEOUT); // erasing can take very long
+    }
+
+    public CompletableFuture<Void> restartAsync(String individualAddress) {
+        return requestAckAsync(() -> new MsgRestart(individualAddress), WAIT_TIMEOUT);
     }
     
     public void sendAck() throws KnxException {
         sendMessage(new MsgAck());
     }
+
+    /**
+     * Acknowledge a data read message. The expectation for the next data read
+     * message is registered before the ack is sent, as the device answers
+     * immediately.
+     *
+     * @throws KnxException
+     */
+    private void ackDataRead() throws KnxException {
+        PendingResponse<ProgMessage> next = dispatcher.expect(ProgMessage.class, targetAddress,
+                msg -> msg instanceof MsgDataReadData || msg instanceof MsgDataReadResponse, 1);
+        PendingResponse<ProgMessage> previous = nextDataRead;
+        nextDataRead = next;
+        if (previous != null) {
+            dispatcher.remove(previous);
+        }
+        try {
+            next.markSent();
+            sendAck();
+        } catch (KnxException ex) {
+            dispatcher.remove(next);
+            nextDataRead = null;
+            throw ex;
+        }
+    }
+
+    private <T extends ProgMessage> T awaitDataRead(Class<T> msgClass) throws KnxException {
+        PendingResponse<ProgMessage> pending = nextDataRead;
+        if (pending == null) {
+            throw new IllegalStateException("No data read in progress. Call startDataRead() first.");
+        }
+        try {
+            ProgMessage msg = awaitSingle(pending, MSGTYPE_DATA_READ, 5 * WAIT_TIMEOUT);
+            addRttSample(MSGTYPE_DATA_READ, pending);
+            if (!msgClass.isInstance(msg)) {
+                throw new KnxException("Wrong message type received. Expected:" + msgClass + ". Got: " + msg);
+            }
+            return msgClass.cast(msg);
+        } finally {
+            dispatcher.remove(pending);
+            if (nextDataRead == pending) {
+                nextDataRead = null;
+            }
+        }
+    }
     
     public class DataReadResponse {
         
@@ -0,0 +1,228 @@
+/*
+ * Copyright (C) 2020 Alexander Christian <alex(at)root1.de>. All rights reserved.
+ *
+ * This file is part of KONNEKTING DeviceConfig.
+ *
+ *   KONNEKTING DeviceConfig is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   KONNEKTING DeviceConfig is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with KONNEKTING DeviceConfig.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.konnekting.mgnt.protocol0x01;
+
+import static de.konnekting.mgnt.protocol0x01.ProgProtocol0x01.PROG_GA;
+import de.root1.slicknx.GroupAddressEvent;
+import de.root1.slicknx.GroupAddressListener;
+import de.root1.slicknx.Knx;
+import de.root1.slicknx.KnxException;
+import java.lang.ref.WeakReference;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * One listener on {@link ProgProtocol0x01#PROG_GA} per {@link Knx}
+ * connection. Each telegram is decoded once and routed to the sessions
+ * ({@link ProgProtocol0x01} instances) of this connection: first to the
+ * sessions bound to the telegram's source address, then, if none of them
+ * consumed it, to the unbound sessions.
+ * <p>
+ * Neither the hub nor its sessions keep the connection reachable: a hub is
+ * only referenced weakly from {@link #HUBS} and strongly from its listener on
+ * the connection, and sessions that were never closed are referenced weakly.
+ * <p>
+ * A hub can also be created directly on a {@link ProgLink}, without a
+ * connection. Such a hub is not shared.
+ *
+ * @author achristian
+ */
+class ProgProtocolHub {
+
+    private static final Logger log = LoggerFactory.getLogger(ProgProtocolHub.class);
+    private static final Logger plog = LoggerFactory.getLogger("ProgrammingLogger");
+
+    private static final Map<Knx, WeakReference<ProgProtocolHub>> HUBS = new WeakHashMap<>();
+
+    /**
+     * Hub of the given connection. The hub is created on first use.
+     *
+     * @param knx connection
+     * @return hub of connection
+     */
+    static ProgProtocolHub of(Knx knx) {
+        synchronized (HUBS) {
+            ProgProtocolHub hub = get(knx);
+            if (hub == null) {
+                hub = new ProgProtocolHub(knx, new KnxLink(knx));
+                HUBS.put(knx, new WeakReference<>(hub));
+            }
+            return hub;
+        }
+    }
+
+    /**
+     * Attach a session. The listener is added to the link with the first
+     * session.
+     *
+     * @param session session to attach
+     */
+    void attach(ProgProtocol0x01 session) {
+        synchronized (HUBS) {
+            if (sessions.isEmpty()) {
+                if (knx != null && get(knx) != this) {
+                    // last session was detached in the meantime
+                    HUBS.put(knx, new WeakReference<>(this));
+                }
+                link.listen(gal);
+            }
+            sessions.add(new WeakReference<>(session));
+        }
+    }
+
+    /**
+     * Detach a session. The listener is removed from the link as soon as the
+     * last session is gone.
+     *
+     * @param session session to detach
+     */
+    void detach(ProgProtocol0x01 session) {
+        synchronized (HUBS) {
+            sessions.removeIf(ref -> ref.get() == null || ref.get() == session);
+            if (sessions.isEmpty()) {
+                if (knx != null && get(knx) == this) {
+                    HUBS.remove(knx);
+                }
+                link.unlisten(gal);
+            }
+        }
+    }
+
+    /**
+     * @param knx connection
+     * @return hub of connection, or null if no session is attached
+     */
+    static ProgProtocolHub get(Knx knx) {
+        WeakReference<ProgProtocolHub> ref = HUBS.get(knx);
+        return ref == null ? null : ref.get();
+    }
+
+    private final Knx knx;
+    private final ProgLink link;
+    private final List<WeakReference<ProgProtocol0x01>> sessions = new CopyOnWriteArrayList<>();
+
+    private final GroupAddressListener gal = new GroupAddressListener() {
+
+        @Override
+        public void readRequest(GroupAddressEvent event) {
+            // not handled
+        }
+
+        @Override
+        public void readResponse(GroupAddressEvent event) {
+            // not handled
+        }
+
+        @Override
+        public void write(GroupAddressEvent event) {
+            if (event.getDestination().equals(PROG_GA)) {
+                try {
+                    ProgMessage msg = ProgMessageCodec.decode(event.getData());
+                    plog.info("Received message {} from {}", msg, event.getSource());
+                    route(msg, event.getSource());
+                } catch (InvalidMessageException ex) {
+                    plog.warn("Invalid message during programming detected", ex);
+                }
+            }
+        }
+    };
+
+    private ProgProtocolHub(Knx knx, ProgLink link) {
+        this.knx = knx;
+        this.link = link;
+    }
+
+    /**
+     * Create a hub on a link, not registered for any connection
+     *
+     * @param link link
+     */
+    ProgProtocolHub(ProgLink link) {
+        this(null, link);
+    }
+
+    /**
+     * Send telegram over the link
+     *
+     * @param msgData telegram
+     * @throws KnxException
+     */
+    void write(byte[] msgData) throws KnxException {
+        link.write(msgData);
+    }
+
+    /**
+     * Route message to sessions bound to its source, then to unbound
+     * sessions.
+     *
+     * @param msg decoded message
+     * @param source source IA of telegram
+     */
+    void route(ProgMessage msg, String source) {
+        for (WeakReference<ProgProtocol0x01> ref : sessions) {
+            ProgProtocol0x01 session = ref.get();
+            if (session == null) {
+                // abandoned without close()
+                sessions.remove(ref);
+            } else if (source != null && source.equals(session.getIndividualAddress()) && session.dispatch(msg, source)) {
+                return;
+            }
+        }
+        for (WeakReference<ProgProtocol0x01> ref : sessions) {
+            ProgProtocol0x01 session = ref.get();
+            if (session != null && session.getIndividualAddress() == null && session.dispatch(msg, source)) {
+                return;
+            }
+        }
+        log.debug("No session waits for {} from {}. Dropping it.", msg, source);
+    }
+
+    /**
+     * {@link ProgLink} over a KNX connection
+     */
+    private static class KnxLink implements ProgLink {
+
+        private final Knx knx;
+
+        KnxLink(Knx knx) {
+            this.knx = knx;
+        }
+
+        @Override
+        public void listen(GroupAddressListener listener) {
+            knx.addGroupAddressListener(PROG_GA, listener);
+        }
+
+        @Override
+        public void unlisten(GroupAddressListener listener) {
+            knx.removeGroupAddressListener(PROG_GA, listener);
+        }
+
+        @Override
+        public void write(byte[] msgData) throws KnxException {
+            knx.writeRaw(false, PROG_GA, msgData);
+        }
+
+    }
+
+}
@@ -0,0 +1,199 @@
+/*
+ * Copyright (C) 2020 Alexander Christian <alex(at)root1.de>. All rights reserved.
+ *
+ * This file is part of KONNEKTING DeviceConfig.
+ *
+ *   KONNEKTING DeviceConfig is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   KONNEKTING DeviceConfig is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with KONNEKTING DeviceConfig.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.konnekting.mgnt.protocol0x01;
+
+import de.root1.slicknx.KnxException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Correlates received messages with outstanding requests. Each request
+ * registers a {@link PendingResponse} before it is sent. Received messages are
+ * handed to the oldest matching expectation. Messages nobody waits for are
+ * dropped instead of failing the running operation.
+ * <p>
+ * KNX TP repeats a telegram if the link layer misses its acknowledgement. A
+ * memory or property page response equal to the previous one of the same
+ * source within {@link #getDuplicateWindow()} may be such a repetition. It is
+ * only handed to expectations whose request was sent before the previous
+ * telegram arrived, as only those can have caused a second, real answer with
+ * the same content. Other answers are never treated as repetition: all acks
+ * look the same, and so do data read messages of constant data, so an equal
+ * telegram is the regular answer to the next request.
+ *
+ * @author achristian
+ */
+class ResponseDispatcher {
+
+    private static final Logger log = LoggerFactory.getLogger(ResponseDispatcher.class);
+
+    /**
+     * outstanding expectations, in order of registration
+     */
+    private final List<PendingResponse<?>> pending = new CopyOnWriteArrayList<>();
+
+    /**
+     * last telegram per source, to detect repetitions
+     */
+    private final Map<String, Received> lastReceived = new ConcurrentHashMap<>();
+
+    private volatile int duplicateWindow = 100;
+
+    private static class Received {
+
+        final byte[] data;
+        final long nanos;
+
+        Received(byte[] data, long nanos) {
+            this.data = data;
+            this.nanos = nanos;
+        }
+    }
+
+    /**
+     * Set time after a telegram in which an equal telegram of the same source
+     * is treated as possible repetition.
+     *
+     * @param millis window in milliseconds, 0 disables duplicate detection
+     */
+    void setDuplicateWindow(int millis) {
+        if (millis < 0) {
+            throw new IllegalArgumentException("duplicate window must not be negative");
+        }
+        duplicateWindow = millis;
+    }
+
+    int getDuplicateWindow() {
+        return duplicateWindow;
+    }
+
+    /**
+     * Register expectation for exactly one message
+     *
+     * @param <T>
+     * @param msgClass class of expected message
+     * @param source source IA, or null for any source
+     * @return registered expectation
+     */
+    <T extends ProgMessage> PendingResponse<T> expect(Class<T> msgClass, String source) {
+        return expect(msgClass, source, null, 1);
+    }
+
+    /**
+     * Register expectation for any number of messages
+     *
+     * @param <T>
+     * @param msgClass class of expected messages
+     * @param source source IA, or null for any source
+     * @return registered expectation
+     */
+    <T extends ProgMessage> PendingResponse<T> expectAll(Class<T> msgClass, String source) {
+        return expect(msgClass, source, null, Integer.MAX_VALUE);
+    }
+
+    <T extends ProgMessage> PendingResponse<T> expect(Class<T> msgClass, String source, Predicate<? super T> filter, int expectedCount) {
+        PendingResponse<T> p = new PendingResponse<>(msgClass, source, filter, expectedCount);
+        pending.add(p);
+        return p;
+    }
+
+    /**
+     * Unregister expectation. Has to be called when waiting is over, no matter
+     * if successful or not.
+     *
+     * @param p expectation to remove
+     */
+    void remove(PendingResponse<?> p) {
+        pending.remove(p);
+    }
+
+    /**
+     * Fail all outstanding expectations, f.i. on cancel
+     *
+     * @param ex cause
+     */
+    void failAll(KnxException ex) {
+        for (PendingResponse<?> p : pending) {
+            p.fail(ex);
+        }
+    }
+
+    /**
+     * Hand received message to the oldest matching expectation.
+     *
+     * @param msg received message
+     * @param source source IA of telegram
+     * @return true, if message was consumed
+     */
+    boolean dispatch(ProgMessage msg, String source) {
+        long now = System.nanoTime();
+        long previous = previousEqual(msg, source, now);
+        for (PendingResponse<?> p : pending) {
+            if (previous != 0 && !p.isSentBefore(previous)) {
+                continue;
+            }
+            if (p.offer(msg, source)) {
+                return true;
+            }
+        }
+        // a NACK may be the answer to any request, not only to the ones waiting for an ack
+        if (msg instanceof MsgAck && !((MsgAck) msg).isAcknowledged()) {
+            for (PendingResponse<?> p : pending) {
+                if (previous != 0 && !p.isSentBefore(previous)) {
+                    continue;
+                }
+                if (!p.isDone() && p.acceptsSource(source)) {
+                    p.fail(new KnxException("Not acknowledged. Expected " + p.getMessageClass().getSimpleName() + ", got " + msg));
+                    return true;
+                }
+            }
+        }
+        if (previous != 0) {
+            log.debug("Dropping repeated telegram {} from {}", msg, source);
+        }
+        return false;
+    }
+
+    /**
+     * Remember telegram and check if it equals the previous one of its source
+     *
+     * @return arrival time of the equal previous telegram, or 0 if there is
+     * none within the duplicate window or the message carries no address to
+     * tell answers apart
+     */
+    private long previousEqual(ProgMessage msg, String source, long now) {
+        int window = duplicateWindow;
+        if (window == 0 || !(msg instanceof MsgMemoryResponse || msg instanceof MsgPropertyPageResponse)) {
+            return 0;
+        }
+        Received last = lastReceived.put(source == null ? "" : source, new Received(msg.data, now));
+        if (last != null && now - last.nanos <= TimeUnit.MILLISECONDS.toNanos(window) && Arrays.equals(last.data, msg.data)) {
+            return last.nanos;
+        }
+        return 0;
+    }
+
+}
@@ -0,0 +1,77 @@
+/*
+ * Copyright (C) 2020 Alexander Christian <alex(at)root1.de>. All rights reserved.
+ *
+ * This file is part of KONNEKTING DeviceConfig.
+ *
+ *   KONNEKTING DeviceConfig is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   KONNEKTING DeviceConfig is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with KONNEKTING DeviceConfig.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.konnekting.mgnt.protocol0x01;
+
+/**
+ * How often and with which delay a request is sent again when its answer is
+ * missing. Only used for requests that are idempotent, like writing memory
+ * or checksums at a fixed address. The delay starts with the initial backoff
+ * and doubles with each retry, up to the maximum backoff.
+ *
+ * @author achristian
+ */
+public class RetryPolicy {
+
+    /**
+     * Never retry, fail on first missing answer
+     */
+    public static final RetryPolicy NONE = new RetryPolicy(0, 0, 0);
+
+    /**
+     * Default for idempotent writes: up to 3 retries, 100ms..1000ms backoff
+     */
+    public static final RetryPolicy DEFAULT = new RetryPolicy(3, 100, 1000);
+
+    private final int maxRetries;
+    private final int initialBackoff;
+    private final int maxBackoff;
+
+    /**
+     * @param maxRetries number of retries after the first attempt, 0 for none
+     * @param initialBackoff delay before first retry in milliseconds
+     * @param maxBackoff upper limit of the delay in milliseconds
+     */
+    public RetryPolicy(int maxRetries, int initialBackoff, int maxBackoff) {
+        if (maxRetries < 0 || initialBackoff < 0 || maxBackoff < initialBackoff) {
+            throw new IllegalArgumentException("invalid retry policy: maxRetries=" + maxRetries + ", initialBackoff=" + initialBackoff + ", maxBackoff=" + maxBackoff);
+        }
+        this.maxRetries = maxRetries;
+        this.initialBackoff = initialBackoff;
+        this.maxBackoff = maxBackoff;
+    }
+
+    public int getMaxRetries() {
+        return maxRetries;
+    }
+
+    /**
+     * @param retry number of retry, starting with 1
+     * @return delay before given retry in milliseconds
+     */
+    public int getBackoff(int retry) {
+        long delay = (long) initialBackoff << Math.min(retry - 1, 20);
+        return (int) Math.min(delay, maxBackoff);
+    }
+
+    @Override
+    public String toString() {
+        return "RetryPolicy{" + "maxRetries=" + maxRetries + ", initialBackoff=" + initialBackoff + ", maxBackoff=" + maxBackoff + '}';
+    }
+
+}
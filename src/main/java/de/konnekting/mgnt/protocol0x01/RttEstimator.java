@@ -0,0 +1,131 @@
+/*
+ * Copyright (C) 2020 Alexander Christian <alex(at)root1.de>. All rights reserved.
+ *
+ * This file is part of KONNEKTING DeviceConfig.
+ *
+ *   KONNEKTING DeviceConfig is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   KONNEKTING DeviceConfig is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with KONNEKTING DeviceConfig.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.konnekting.mgnt.protocol0x01;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Estimates round trip times per request message type and device, the same
+ * way TCP does (RFC 6298): a smoothed RTT plus four times its variance gives
+ * the timeout. Each timeout is limited by the fixed upper bound of the
+ * operation, so it can never get longer than it used to be.
+ *
+ * @author achristian
+ */
+public class RttEstimator {
+
+    /**
+     * Lower limit for timeouts in milliseconds
+     */
+    public static final int MIN_TIMEOUT = 200;
+
+    private static final double ALPHA = 1d / 8d;
+    private static final double BETA = 1d / 4d;
+    private static final int K = 4;
+
+    private static class Entry {
+
+        double srtt;
+        double rttvar;
+        int backoff = 1;
+        long samples;
+    }
+
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+
+    private static String key(byte requestType, String individualAddress) {
+        return (requestType & 0xFF) + "@" + individualAddress;
+    }
+
+    /**
+     * Add a measured round trip
+     *
+     * @param requestType message type of request
+     * @param individualAddress address of responding device, may be null
+     * @param rttMillis measured round trip time
+     */
+    public void addSample(byte requestType, String individualAddress, double rttMillis) {
+        Entry e = entries.computeIfAbsent(key(requestType, individualAddress), k -> new Entry());
+        synchronized (e) {
+            if (e.samples == 0) {
+                e.srtt = rttMillis;
+                e.rttvar = rttMillis / 2;
+            } else {
+                e.rttvar = (1 - BETA) * e.rttvar + BETA * Math.abs(e.srtt - rttMillis);
+                e.srtt = (1 - ALPHA) * e.srtt + ALPHA * rttMillis;
+            }
+            e.backoff = 1;
+            e.samples++;
+        }
+    }
+
+    /**
+     * Double the timeout for the given request type and device until the next
+     * sample arrives. To be called when a request got no response.
+     *
+     * @param requestType message type of request
+     * @param individualAddress address of device, may be null
+     */
+    public void backoff(byte requestType, String individualAddress) {
+        Entry e = entries.get(key(requestType, individualAddress));
+        if (e != null) {
+            synchronized (e) {
+                e.backoff = Math.min(e.backoff * 2, 64);
+            }
+        }
+    }
+
+    /**
+     * Timeout for a request, derived from measured round trips.
+     *
+     * @param requestType message type of request
+     * @param individualAddress address of device, may be null
+     * @param upperBound maximum timeout in milliseconds. Also used as long as
+     * nothing has been measured yet.
+     * @return timeout in milliseconds
+     */
+    public int getTimeout(byte requestType, String individualAddress, int upperBound) {
+        Entry e = entries.get(key(requestType, individualAddress));
+        if (e == null) {
+            return upperBound;
+        }
+        synchronized (e) {
+            double rto = (e.srtt + K * e.rttvar) * e.backoff;
+            return (int) Math.min(upperBound, Math.max(MIN_TIMEOUT, Math.ceil(rto)));
+        }
+    }
+
+    /**
+     * @param requestType message type of request
+     * @param individualAddress address of device, may be null
+     * @return smoothed round trip time in milliseconds, or -1 if nothing
+     * has been measured yet
+     */
+    public double getSmoothedRtt(byte requestType, String individualAddress) {
+        Entry e = entries.get(key(requestType, individualAddress));
+        if (e == null) {
+            return -1;
+        }
+        synchronized (e) {
+            return e.srtt;
+        }
+    }
+
+}
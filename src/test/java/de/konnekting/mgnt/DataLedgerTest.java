@@ -0,0 +1,53 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package de.konnekting.mgnt;
+
+import java.io.File;
+import java.nio.file.Files;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author achristian
+ */
+public class DataLedgerTest {
+
+    /**
+     * Entries survive a reload and only match the same content
+     */
+    @Test
+    public void testPutAndReload() throws Exception {
+        System.out.println("putAndReload");
+        File dir = Files.createTempDirectory("ledger").toFile();
+        File data = new File(dir, "firmware.bin");
+        Files.write(data.toPath(), "123456789".getBytes("US-ASCII"));
+
+        DataLedger.Entry entry = DataLedger.Entry.of(data);
+        assertEquals(9, entry.size);
+        assertEquals(0xCBF43926L, entry.crc);
+        assertEquals("15e2b0d3c33891ebb0f1ef609ec419420c20e320ce94c65fbc8c3312448eb225", entry.sha256);
+
+        DataLedger ledger = DataLedger.open(dir, "1.1.10");
+        assertNull(ledger.get((byte) 0x00, (byte) 0x00));
+        ledger.put((byte) 0x00, (byte) 0x00, entry);
+        ledger.save();
+
+        DataLedger loaded = DataLedger.open(dir, "1.1.10");
+        assertTrue(entry.sameAs(loaded.get((byte) 0x00, (byte) 0x00)));
+        assertFalse(new DataLedger.Entry(9, entry.crc, "00").sameAs(loaded.get((byte) 0x00, (byte) 0x00)));
+        assertNull(loaded.get((byte) 0x01, (byte) 0x00));
+        assertTrue(loaded.getTimestamp((byte) 0x00, (byte) 0x00) > 0);
+
+        loaded.remove((byte) 0x00, (byte) 0x00);
+        assertNull(loaded.get((byte) 0x00, (byte) 0x00));
+        assertEquals(0, loaded.getTimestamp((byte) 0x00, (byte) 0x00));
+        new File(dir, "1_1_10.ledger").delete();
+        data.delete();
+        dir.delete();
+    }
+
+}
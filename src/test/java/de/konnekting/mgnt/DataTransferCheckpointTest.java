@@ -0,0 +1,50 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package de.konnekting.mgnt;
+
+import java.io.File;
+import java.nio.file.Files;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author achristian
+ */
+public class DataTransferCheckpointTest {
+
+    /**
+     * Offset survives a reload, starting a transfer again drops it
+     */
+    @Test
+    public void testSaveAndReload() throws Exception {
+        System.out.println("saveAndReload");
+        File dir = Files.createTempDirectory("checkpoint").toFile();
+        DataTransferCheckpoint checkpoint = DataTransferCheckpoint.open(dir, "1.1.10", (byte) 0x01, (byte) 0x02);
+        assertTrue(checkpoint.isEmpty());
+        checkpoint.begin(1000);
+        checkpoint.acknowledged(880, 0x1234L);
+        checkpoint.save();
+
+        DataTransferCheckpoint loaded = DataTransferCheckpoint.open(dir, "1.1.10", (byte) 0x01, (byte) 0x02);
+        assertTrue(loaded.matches(1000, 0x1234L));
+        assertFalse(loaded.matches(1000, 0x4321L));
+        assertFalse(loaded.matches(2000, 0x1234L));
+        assertEquals(880, loaded.getOffset());
+        assertEquals(1000, loaded.getLength());
+        // other data id, other checkpoint
+        assertTrue(DataTransferCheckpoint.open(dir, "1.1.10", (byte) 0x01, (byte) 0x03).isEmpty());
+
+        loaded.begin(2000);
+        assertEquals(0, loaded.getOffset());
+        assertFalse(loaded.matches(1000, 0x1234L));
+
+        loaded.delete();
+        assertTrue(DataTransferCheckpoint.open(dir, "1.1.10", (byte) 0x01, (byte) 0x02).isEmpty());
+        dir.delete();
+    }
+
+}
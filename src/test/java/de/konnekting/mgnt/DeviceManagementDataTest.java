@@ -0,0 +1,214 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package de.konnekting.mgnt;
+
+import de.konnekting.mgnt.protocol0x01.DeviceEmulator;
+import de.konnekting.mgnt.protocol0x01.ProgProtocol0x01;
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Arrays;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author achristian
+ */
+public class DeviceManagementDataTest {
+
+    /**
+     * The ledger is kept for the device in prog mode: sending the same data
+     * again is skipped, until the data storage of the device is unloaded
+     */
+    @Test
+    public void testSkipIdenticalData() throws Exception {
+        System.out.println("skipIdenticalData");
+        File dir = Files.createTempDirectory("journal").toFile();
+        File f = new File(dir, "data.bin");
+        byte[] content = new byte[100];
+        for (int i = 0; i < content.length; i++) {
+            content[i] = (byte) i;
+        }
+        Files.write(f.toPath(), content);
+
+        DeviceEmulator device = new DeviceEmulator("1.1.10");
+        DeviceManagement dm = new DeviceManagement(device.connect());
+        dm.setJournalDirectory(dir);
+        dm.setSkipIdenticalData(true);
+        try {
+            dm.startProgMode("1.1.10", -1, (short) -1, (short) -1, (short) -1);
+
+            assertTrue(dm.sendData(f, (byte) 0x01, (byte) 0x00));
+            assertEquals(1, device.getDataWritesFinished());
+            assertTrue(Arrays.equals(content, device.getData()));
+            assertTrue(new File(dir, "1_1_10.ledger").exists());
+
+            assertFalse(dm.sendData(f, (byte) 0x01, (byte) 0x00));
+            assertEquals(1, device.getDataWritesFinished());
+
+            dm.unload(false, false, false, false, true);
+            assertFalse(new File(dir, "1_1_10.ledger").exists());
+            assertTrue(dm.sendData(f, (byte) 0x01, (byte) 0x00));
+            assertEquals(2, device.getDataWritesFinished());
+        } finally {
+            dm.close();
+        }
+    }
+
+    /**
+     * An interrupted transfer leaves a checkpoint of the acknowledged part,
+     * which is removed by the next complete transfer. A device without
+     * support for resuming gets all data again.
+     */
+    @Test
+    public void testCheckpointOfInterruptedTransfer() throws Exception {
+        System.out.println("checkpointOfInterruptedTransfer");
+        File dir = Files.createTempDirectory("journal").toFile();
+        File f = new File(dir, "data.bin");
+        Files.write(f.toPath(), new byte[100]);
+
+        DeviceEmulator device = new DeviceEmulator("1.1.10");
+        DeviceManagement dm = new DeviceManagement(device.connect());
+        dm.setJournalDirectory(dir);
+        try {
+            dm.startProgMode("1.1.10", -1, (short) -1, (short) -1, (short) -1);
+
+            device.setDataWritesUntilNack(3);
+            try {
+                dm.sendData(f, (byte) 0x01, (byte) 0x00);
+                fail("NACK not reported");
+            } catch (DeviceManagementException ex) {
+                // expected
+            }
+            DataTransferCheckpoint checkpoint = DataTransferCheckpoint.open(dir, "1.1.10", (byte) 0x01, (byte) 0x00);
+            assertEquals(3 * ProgProtocol0x01.DATA_WRITE_BYTES_MAX, checkpoint.getOffset());
+
+            device.setDataWritesUntilNack(-1);
+            assertTrue(dm.sendData(f, (byte) 0x01, (byte) 0x00));
+            assertEquals(1, device.getDataWritesFinished());
+            // device cannot resume, all 10 messages are sent again
+            assertEquals(13, device.getDataWritesAcknowledged());
+            assertTrue(DataTransferCheckpoint.open(dir, "1.1.10", (byte) 0x01, (byte) 0x00).isEmpty());
+        } finally {
+            dm.close();
+        }
+    }
+
+    /**
+     * A device that supports it continues an interrupted transfer at the
+     * checkpoint, the acknowledged messages are not sent again
+     */
+    @Test
+    public void testResumeInterruptedTransfer() throws Exception {
+        System.out.println("resumeInterruptedTransfer");
+        File dir = Files.createTempDirectory("journal").toFile();
+        File f = new File(dir, "data.bin");
+        byte[] content = new byte[100];
+        for (int i = 0; i < content.length; i++) {
+            content[i] = (byte) (i * 7);
+        }
+        Files.write(f.toPath(), content);
+
+        DeviceEmulator device = new DeviceEmulator("1.1.10");
+        device.setCapabilities((byte) PropertyPageDeviceInfo.CAPABILITY_DATA_WRITE_RESUME);
+        DeviceManagement dm = new DeviceManagement(device.connect());
+        dm.setJournalDirectory(dir);
+        try {
+            dm.startProgMode("1.1.10", -1, (short) -1, (short) -1, (short) -1);
+
+            device.setDataWritesUntilNack(3);
+            try {
+                dm.sendData(f, (byte) 0x01, (byte) 0x00);
+                fail("NACK not reported");
+            } catch (DeviceManagementException ex) {
+                // expected
+            }
+            assertEquals(3, device.getDataWritesAcknowledged());
+
+            device.setDataWritesUntilNack(-1);
+            assertTrue(dm.sendData(f, (byte) 0x01, (byte) 0x00));
+            // 10 messages in total, 3 of them before the interruption
+            assertEquals(10, device.getDataWritesAcknowledged());
+            assertEquals(1, device.getDataWritesFinished());
+            assertTrue(Arrays.equals(content, device.getData()));
+            assertTrue(DataTransferCheckpoint.open(dir, "1.1.10", (byte) 0x01, (byte) 0x00).isEmpty());
+        } finally {
+            dm.close();
+        }
+    }
+
+    /**
+     * A lost ack within a window of data writes falls back to window size 1
+     * and continues after the acknowledged part
+     */
+    @Test
+    public void testContinueAfterLostAck() throws Exception {
+        System.out.println("continueAfterLostAck");
+        File f = File.createTempFile("data", ".bin");
+        f.deleteOnExit();
+        byte[] content = new byte[100];
+        for (int i = 0; i < content.length; i++) {
+            content[i] = (byte) (i * 3);
+        }
+        Files.write(f.toPath(), content);
+
+        DeviceEmulator device = new DeviceEmulator("1.1.10");
+        device.setCapabilities((byte) PropertyPageDeviceInfo.CAPABILITY_DATA_WRITE_RESUME);
+        DeviceManagement dm = new DeviceManagement(device.connect());
+        try {
+            dm.startProgMode("1.1.10", -1, (short) -1, (short) -1, (short) -1);
+            // stop-and-wait transfer first, for round trip times to wait for late acks
+            assertTrue(dm.sendData(f, (byte) 0x01, (byte) 0x01));
+            assertEquals(10, device.getDataWritesAcknowledged());
+
+            dm.setDataWriteWindowSize(4);
+            device.setDataWritesUntilAckLost(5);
+            assertTrue(dm.sendData(f, (byte) 0x01, (byte) 0x00));
+            assertEquals(2, device.getDataWritesFinished());
+            assertTrue(Arrays.equals(content, device.getData()));
+            // the ack after the lost one is taken for it, so all but the last
+            // message count as acknowledged, only the last one is sent again
+            assertEquals(10 + 9 + 1, device.getDataWritesAcknowledged());
+        } finally {
+            dm.close();
+        }
+    }
+
+    /**
+     * Compressed data is only sent to a device that decompresses it, and
+     * arrives the same as raw data
+     */
+    @Test
+    public void testCompressedDataWrite() throws Exception {
+        System.out.println("compressedDataWrite");
+        File f = File.createTempFile("data", ".bin");
+        f.deleteOnExit();
+        byte[] content = new byte[1000];
+        for (int i = 0; i < content.length; i++) {
+            content[i] = (byte) (i % 10);
+        }
+        Files.write(f.toPath(), content);
+
+        DeviceEmulator compressing = new DeviceEmulator("1.1.10");
+        compressing.setCapabilities((byte) PropertyPageDeviceInfo.CAPABILITY_COMPRESSED_DATA_WRITE);
+        DeviceEmulator plain = new DeviceEmulator("1.1.10");
+        for (DeviceEmulator device : new DeviceEmulator[]{compressing, plain}) {
+            DeviceManagement dm = new DeviceManagement(device.connect());
+            dm.setCompressDataWrites(true);
+            try {
+                dm.startProgMode("1.1.10", -1, (short) -1, (short) -1, (short) -1);
+                assertTrue(dm.sendData(f, (byte) 0x01, (byte) 0x00));
+                assertEquals(1, device.getDataWritesFinished());
+                assertTrue(Arrays.equals(content, device.getData()));
+            } finally {
+                dm.close();
+            }
+        }
+        assertTrue(compressing.getBytesReceived() < content.length);
+        assertEquals(content.length, plain.getBytesReceived());
+    }
+
+}
@@ -0,0 +1,83 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package de.konnekting.mgnt;
+
+import de.konnekting.mgnt.protocol0x01.DeviceEmulator;
+import de.konnekting.mgnt.protocol0x01.ProgProtocol0x01;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author achristian
+ */
+public class DeviceManagementPlanTest {
+
+    private static DeviceManagement.Job job(boolean inSession) {
+        DeviceManagement.Job job = new DeviceManagement.Job();
+        job.individualAddress = "1.1.10";
+        job.inSession = inSession;
+        job.tables.add(new DeviceManagement.Table(ChecksumIdentifier.PARAMETER_TABLE, "readingParameterTable", new byte[0], new byte[20]));
+        return job;
+    }
+
+    private static boolean contains(ProgrammingPlan plan, byte requestType) {
+        for (ProgrammingPlan.Step step : plan.getSteps()) {
+            if (step.getRequestType() == requestType) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Without stored system table, the tables are planned as full writes,
+     * framed by prog mode handshake, stop and restart
+     */
+    @Test
+    public void testPlanWithoutSystemTable() throws Exception {
+        System.out.println("planWithoutSystemTable");
+        DeviceManagement dm = new DeviceManagement(new DeviceEmulator("1.1.10").connect());
+        try {
+            ProgrammingPlan plan = dm.planProgramming(job(false));
+
+            assertFalse(plan.isExact());
+            assertEquals(11, plan.getSteps().size());
+            assertEquals(ProgProtocol0x01.MSGTYPE_PROGRAMMING_MODE_READ, plan.getSteps().get(0).getRequestType());
+            assertEquals(ProgProtocol0x01.MSGTYPE_RESTART, plan.getSteps().get(10).getRequestType());
+            // unknown address, the parameter table is written as a whole
+            ProgrammingPlan.Step write = plan.getSteps().get(7);
+            assertEquals(ProgProtocol0x01.MSGTYPE_MEMORY_WRITE, write.getRequestType());
+            assertEquals(20, write.getLength());
+        } finally {
+            dm.close();
+        }
+    }
+
+    /**
+     * Within a session, prog mode is already active: no handshake, stop or
+     * restart is planned, the tables are planned the same
+     */
+    @Test
+    public void testPlanInSession() throws Exception {
+        System.out.println("planInSession");
+        DeviceManagement dm = new DeviceManagement(new DeviceEmulator("1.1.10").connect());
+        try {
+            ProgrammingPlan outside = dm.planProgramming(job(false));
+            ProgrammingPlan inside = dm.planProgramming(job(true));
+
+            assertFalse(contains(inside, ProgProtocol0x01.MSGTYPE_PROGRAMMING_MODE_READ));
+            assertFalse(contains(inside, ProgProtocol0x01.MSGTYPE_PROGRAMMING_MODE_WRITE));
+            assertFalse(contains(inside, ProgProtocol0x01.MSGTYPE_PROPERTY_PAGE_READ));
+            assertFalse(contains(inside, ProgProtocol0x01.MSGTYPE_RESTART));
+            assertEquals(5, inside.getSteps().size());
+            assertEquals(outside.getSteps().subList(4, 9).toString(), inside.getSteps().toString());
+        } finally {
+            dm.close();
+        }
+    }
+
+}
@@ -0,0 +1,62 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package de.konnekting.mgnt;
+
+import de.konnekting.deviceconfig.utils.WritePlanner;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author achristian
+ */
+public class DeviceMemoryImageTest {
+
+    /**
+     * Adjacent tables are written as one stream, separated tables are not
+     */
+    @Test
+    public void testAdjacentTablesAreCoalesced() {
+        System.out.println("adjacentTablesAreCoalesced");
+        DeviceMemoryImage instance = new DeviceMemoryImage();
+        instance.put(0x100, new byte[5], null);
+        instance.put(0x105, new byte[4], null);
+        instance.put(0x200, new byte[2], null);
+
+        WritePlanner.WritePlan plan = instance.getWritePlan(9, 0);
+        assertEquals(2, plan.getTelegramCount());
+        assertEquals(0x100, plan.getBlocks().get(0).getIndex());
+        assertEquals(9, plan.getBlocks().get(0).getData().length);
+        assertEquals(0x200, plan.getBlocks().get(1).getIndex());
+        assertEquals(11, instance.getDirtyByteCount());
+    }
+
+    /**
+     * Only bytes differing from the baseline are written, also across table
+     * boundaries
+     */
+    @Test
+    public void testPartialAcrossBoundary() {
+        System.out.println("partialAcrossBoundary");
+        DeviceMemoryImage instance = new DeviceMemoryImage();
+        instance.put(0x100, new byte[]{1, 2, 3, 4}, new byte[]{1, 2, 3, 0});
+        instance.put(0x104, new byte[]{5, 6, 7, 8}, new byte[]{0, 6, 7, 8});
+
+        WritePlanner.WritePlan plan = instance.getWritePlan(9, 0);
+        assertEquals(1, plan.getTelegramCount());
+        assertEquals(0x103, plan.getBlocks().get(0).getIndex());
+        assertArrayEquals(new byte[]{4, 5}, plan.getBlocks().get(0).getData());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testOverlap() {
+        System.out.println("overlap");
+        DeviceMemoryImage instance = new DeviceMemoryImage();
+        instance.put(0x100, new byte[4], null);
+        instance.put(0x103, new byte[4], null);
+    }
+
+}
@@ -0,0 +1,41 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package de.konnekting.mgnt;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author achristian
+ */
+public class MemoryCacheTest {
+
+    /**
+     * Only completely cached ranges are served, writes invalidate
+     */
+    @Test
+    public void testInvalidate() {
+        System.out.println("invalidate");
+        MemoryCache instance = new MemoryCache();
+        assertNull(instance.get(0, 64));
+
+        byte[] data = new byte[64];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) i;
+        }
+        instance.put(0, data);
+        assertArrayEquals(data, instance.get(0, 64));
+        assertArrayEquals(new byte[]{10, 11}, instance.get(10, 2));
+        assertFalse(instance.contains(60, 8));
+
+        instance.invalidate(48, 16);
+        assertNull(instance.get(0, 64));
+        assertTrue(instance.contains(0, 48));
+        assertFalse(instance.contains(0xFFFF, 2));
+    }
+
+}
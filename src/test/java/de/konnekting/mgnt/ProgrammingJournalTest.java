@@ -0,0 +1,72 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package de.konnekting.mgnt;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.List;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author achristian
+ */
+public class ProgrammingJournalTest {
+
+    /**
+     * Acknowledged ranges and checksums survive a reload, the file is gone
+     * after delete
+     */
+    @Test
+    public void testSaveAndResume() throws Exception {
+        System.out.println("saveAndResume");
+        File dir = Files.createTempDirectory("journal").toFile();
+        ProgrammingJournal journal = ProgrammingJournal.open(dir, "1.1.10");
+        assertTrue(journal.isEmpty());
+        journal.begin(ChecksumIdentifier.PARAMETER_TABLE, 0x200, 0x1111L, 0x2222L);
+        journal.begin(ChecksumIdentifier.ADDRESS_TABLE, 0x100, 0x3333L, 0x4444L);
+        journal.written(0x200, 36);
+        journal.written(0x224, 9);
+        journal.checksumSet(ChecksumIdentifier.ADDRESS_TABLE);
+        journal.save();
+
+        ProgrammingJournal loaded = ProgrammingJournal.open(dir, "1.1.10");
+        List<int[]> written = loaded.getWritten();
+        assertEquals(2, written.size());
+        assertEquals(0x224, written.get(1)[0]);
+        assertEquals(9, written.get(1)[1]);
+        assertTrue(loaded.isChecksumSet(ChecksumIdentifier.ADDRESS_TABLE));
+        assertFalse(loaded.isChecksumSet(ChecksumIdentifier.PARAMETER_TABLE));
+
+        loaded.delete();
+        assertTrue(ProgrammingJournal.open(dir, "1.1.10").isEmpty());
+        dir.delete();
+    }
+
+    /**
+     * Entries are only valid while the device reports the CRC from before
+     * writing, or the new CRC once the checksum is set
+     */
+    @Test
+    public void testMatches() throws Exception {
+        System.out.println("matches");
+        ProgrammingJournal journal = ProgrammingJournal.open(Files.createTempDirectory("journal").toFile(), "1.1.10");
+        journal.begin(ChecksumIdentifier.PARAMETER_TABLE, 0x200, 0x1111L, 0x2222L);
+
+        assertTrue(journal.matches(ChecksumIdentifier.PARAMETER_TABLE, 0x200, 0x1111L, 0x2222L));
+        assertTrue(journal.matches(ChecksumIdentifier.COMMOBJECT_TABLE, 0x300, 0x5555L, 0x6666L));
+        // other content to write, other table address, device changed meanwhile
+        assertFalse(journal.matches(ChecksumIdentifier.PARAMETER_TABLE, 0x200, 0x1111L, 0x7777L));
+        assertFalse(journal.matches(ChecksumIdentifier.PARAMETER_TABLE, 0x280, 0x1111L, 0x2222L));
+        assertFalse(journal.matches(ChecksumIdentifier.PARAMETER_TABLE, 0x200, 0x8888L, 0x2222L));
+
+        journal.checksumSet(ChecksumIdentifier.PARAMETER_TABLE);
+        assertTrue(journal.matches(ChecksumIdentifier.PARAMETER_TABLE, 0x200, 0x2222L, 0x2222L));
+        assertFalse(journal.matches(ChecksumIdentifier.PARAMETER_TABLE, 0x200, 0x1111L, 0x2222L));
+    }
+
+}
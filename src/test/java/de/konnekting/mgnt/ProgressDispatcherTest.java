@@ -0,0 +1,70 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package de.konnekting.mgnt;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author achristian
+ */
+public class ProgressDispatcherTest {
+
+    /**
+     * A slow listener neither blocks the caller nor loses status messages.
+     * Progress updates are coalesced, the last one always arrives.
+     */
+    @Test
+    public void testSlowListener() throws Exception {
+        System.out.println("slowListener");
+        List<String> events = new CopyOnWriteArrayList<>();
+        CountDownLatch last = new CountDownLatch(1);
+        ProgressDispatcher instance = new ProgressDispatcher();
+        instance.addListener(new ProgramProgressListener() {
+            @Override
+            public void onStatusMessage(String statusMsg) {
+                events.add(statusMsg);
+            }
+
+            @Override
+            public void onProgressUpdate(int currentStep, int steps) {
+                try {
+                    Thread.sleep(10);
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                }
+                events.add(currentStep + "/" + steps);
+                if (currentStep == steps) {
+                    last.countDown();
+                }
+            }
+        });
+
+        long start = System.nanoTime();
+        instance.status("start");
+        for (int i = 1; i <= 1000; i++) {
+            instance.progress(i, 1000);
+            if (i == 500) {
+                instance.status("half");
+            }
+        }
+        assertTrue(System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(500));
+
+        assertTrue(last.await(2, TimeUnit.SECONDS));
+        assertEquals("start", events.get(0));
+        assertTrue(events.contains("half"));
+        // the update right before the status message is delivered first
+        assertEquals("500/1000", events.get(events.indexOf("half") - 1));
+        assertEquals("1000/1000", events.get(events.size() - 1));
+        assertTrue(events.size() < 100);
+    }
+
+}
@@ -0,0 +1,255 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package de.konnekting.mgnt.protocol0x01;
+
+import de.konnekting.deviceconfig.utils.Bytes2ReadableValue;
+import de.konnekting.deviceconfig.utils.Helper;
+import de.konnekting.mgnt.PropertyPageDeviceInfo;
+import de.root1.slicknx.GroupAddressListener;
+import de.root1.slicknx.KnxException;
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+
+/**
+ * Link with a single KONNEKTING device behind it, which answers programming
+ * mode, device info and data write messages directly on the sending thread.
+ * Nothing is sent to the network.
+ *
+ * @author achristian
+ */
+public class DeviceEmulator implements ProgLink {
+
+    private final String individualAddress;
+    private final ProgProtocolHub hub = new ProgProtocolHub(this);
+    private boolean progMode;
+    private byte capabilities = (byte) 0xFF;
+    private ByteArrayOutputStream received;
+    /**
+     * type, id and size of the unfinished data write, null if there is none
+     */
+    private byte[] prepared;
+    private int uncompressedSize = -1;
+    private byte[] data;
+    private int dataWritesFinished;
+    private int dataWritesAcknowledged;
+    private int dataWritesUntilNack = -1;
+    private int dataWritesUntilAckLost = -1;
+
+    /**
+     * @param individualAddress address of emulated device
+     */
+    public DeviceEmulator(String individualAddress) {
+        this.individualAddress = individualAddress;
+    }
+
+    /**
+     * @return new session, not bound to a device, on this link
+     */
+    public ProgProtocol0x01 connect() {
+        return new ProgProtocol0x01(hub, null);
+    }
+
+    /**
+     * @return number of data writes the device finished
+     */
+    public synchronized int getDataWritesFinished() {
+        return dataWritesFinished;
+    }
+
+    /**
+     * @return number of data write messages the device acknowledged
+     */
+    public synchronized int getDataWritesAcknowledged() {
+        return dataWritesAcknowledged;
+    }
+
+    /**
+     * @return data stored by the last finished data write
+     */
+    public synchronized byte[] getData() {
+        return data;
+    }
+
+    /**
+     * @return number of bytes received by the last data write, before
+     * decompression
+     */
+    public synchronized int getBytesReceived() {
+        return received == null ? 0 : received.size();
+    }
+
+    /**
+     * @param capabilities capability flags reported in the device info, 0xFF
+     * (default) for a device without
+     */
+    public synchronized void setCapabilities(byte capabilities) {
+        this.capabilities = capabilities;
+    }
+
+    /**
+     * @param count number of data write messages to acknowledge before each
+     * further one is answered with a NACK, -1 to acknowledge all
+     */
+    public synchronized void setDataWritesUntilNack(int count) {
+        dataWritesUntilNack = count;
+    }
+
+    /**
+     * @param count number of data write messages to acknowledge before the
+     * ack of the next one gets lost, -1 to lose none
+     */
+    public synchronized void setDataWritesUntilAckLost(int count) {
+        dataWritesUntilAckLost = count;
+    }
+
+    @Override
+    public void listen(GroupAddressListener listener) {
+        // answers are routed to the hub directly
+    }
+
+    @Override
+    public void unlisten(GroupAddressListener listener) {
+        // answers are routed to the hub directly
+    }
+
+    @Override
+    public synchronized void write(byte[] msgData) throws KnxException {
+        byte[] ia = Helper.convertIaToBytes(individualAddress);
+        switch (msgData[1]) {
+            case ProgProtocol0x01.MSGTYPE_PROGRAMMING_MODE_WRITE:
+                if (msgData[2] == ia[0] && msgData[3] == ia[1]) {
+                    progMode = msgData[4] == 0x01;
+                    answer(new MsgAck());
+                }
+                break;
+            case ProgProtocol0x01.MSGTYPE_PROGRAMMING_MODE_READ:
+                if (progMode) {
+                    byte[] response = new byte[ProgMessageCodec.TELEGRAM_SIZE];
+                    Arrays.fill(response, (byte) 0xFF);
+                    response[0] = ProgProtocol0x01.PROTOCOL_VERSION;
+                    response[1] = ProgProtocol0x01.MSGTYPE_PROGRAMMING_MODE_RESPONSE;
+                    response[2] = ia[0];
+                    response[3] = ia[1];
+                    answer(decode(response));
+                }
+                break;
+            case ProgProtocol0x01.MSGTYPE_PROPERTY_PAGE_READ:
+                boolean addressed = msgData[2] == (byte) 0xFF ? msgData[3] == ia[0] && msgData[4] == ia[1] : progMode;
+                if (addressed && msgData[5] == 0x00) {
+                    byte[] response = new byte[ProgMessageCodec.TELEGRAM_SIZE];
+                    Arrays.fill(response, (byte) 0xFF);
+                    response[0] = ProgProtocol0x01.PROTOCOL_VERSION;
+                    response[1] = ProgProtocol0x01.MSGTYPE_PROPERTY_PAGE_RESPONSE;
+                    // manufacturer 0xDEAD, device 0x01, revision 0x00, system 1
+                    response[2] = (byte) 0xDE;
+                    response[3] = (byte) 0xAD;
+                    response[4] = 0x01;
+                    response[5] = 0x00;
+                    response[6] = 0x00;
+                    response[7] = capabilities;
+                    answer(decode(response));
+                }
+                break;
+            case ProgProtocol0x01.MSGTYPE_DATA_WRITE_PREPARE:
+                if (msgData[8] == ProgProtocol0x01.DATA_WRITE_RESUME && hasCapability(PropertyPageDeviceInfo.CAPABILITY_DATA_WRITE_RESUME)) {
+                    long offset = Bytes2ReadableValue.convertUINT32(msgData[9], msgData[10], msgData[11], msgData[12]);
+                    if (prepared == null || !Arrays.equals(prepared, Arrays.copyOfRange(msgData, 2, 8)) || received.size() < offset) {
+                        answer(nack());
+                        break;
+                    }
+                    byte[] kept = Arrays.copyOf(received.toByteArray(), (int) offset);
+                    received = new ByteArrayOutputStream();
+                    received.write(kept, 0, kept.length);
+                    answer(new MsgAck());
+                    break;
+                }
+                received = new ByteArrayOutputStream();
+                prepared = Arrays.copyOfRange(msgData, 2, 8);
+                // a device without the capability ignores the compression
+                boolean compressed = msgData[8] == ProgProtocol0x01.DATA_WRITE_COMPRESSION_LZSS
+                        && hasCapability(PropertyPageDeviceInfo.CAPABILITY_COMPRESSED_DATA_WRITE);
+                uncompressedSize = compressed ? (int) Bytes2ReadableValue.convertUINT32(msgData[9], msgData[10], msgData[11], msgData[12]) : -1;
+                answer(new MsgAck());
+                break;
+            case ProgProtocol0x01.MSGTYPE_DATA_WRITE:
+                if (dataWritesUntilNack == 0) {
+                    answer(nack());
+                    break;
+                }
+                if (dataWritesUntilNack > 0) {
+                    dataWritesUntilNack--;
+                }
+                received.write(msgData, 3, msgData[2]);
+                if (dataWritesUntilAckLost == 0) {
+                    // appended, but the ack does not reach the sender
+                    dataWritesUntilAckLost = -1;
+                    break;
+                }
+                if (dataWritesUntilAckLost > 0) {
+                    dataWritesUntilAckLost--;
+                }
+                dataWritesAcknowledged++;
+                answer(new MsgAck());
+                break;
+            case ProgProtocol0x01.MSGTYPE_DATA_WRITE_FINISH:
+                prepared = null;
+                byte[] stored = received.toByteArray();
+                try {
+                    if (uncompressedSize >= 0) {
+                        stored = Lzss.decompress(stored, uncompressedSize);
+                    }
+                } catch (IllegalArgumentException ex) {
+                    answer(nack());
+                    break;
+                }
+                CRC32 crc32 = new CRC32();
+                crc32.update(stored);
+                if (crc32.getValue() != Bytes2ReadableValue.convertUINT32(msgData[2], msgData[3], msgData[4], msgData[5])) {
+                    answer(nack());
+                    break;
+                }
+                data = stored;
+                dataWritesFinished++;
+                answer(new MsgAck());
+                break;
+            case ProgProtocol0x01.MSGTYPE_DATA_REMOVE:
+            case ProgProtocol0x01.MSGTYPE_UNLOAD:
+                data = null;
+                prepared = null;
+                answer(new MsgAck());
+                break;
+            default:
+                // not emulated, device stays silent
+        }
+    }
+
+    private boolean hasCapability(int capability) {
+        return capabilities != (byte) 0xFF && (capabilities & capability) == capability;
+    }
+
+    private static MsgAck nack() {
+        byte[] nack = new byte[ProgMessageCodec.TELEGRAM_SIZE];
+        Arrays.fill(nack, (byte) 0xFF);
+        nack[0] = ProgProtocol0x01.PROTOCOL_VERSION;
+        nack[1] = ProgProtocol0x01.MSGTYPE_ACK;
+        nack[3] = 0x00;
+        return (MsgAck) decode(nack);
+    }
+
+    private static ProgMessage decode(byte[] data) {
+        try {
+            return ProgMessageCodec.decode(data);
+        } catch (InvalidMessageException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    private void answer(ProgMessage msg) {
+        hub.route(msg, individualAddress);
+    }
+
+}
@@ -0,0 +1,66 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package de.konnekting.mgnt.protocol0x01;
+
+import java.util.Arrays;
+import java.util.Random;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author achristian
+ */
+public class LzssTest {
+
+    /**
+     * A run is encoded as one literal and an overlapping match
+     */
+    @Test
+    public void testFormat() {
+        System.out.println("format");
+        byte[] compressed = Lzss.compress("aaaaaaaa".getBytes());
+        assertEquals(4, compressed.length);
+        assertEquals(0x01, compressed[0]);
+        assertEquals('a', compressed[1]);
+        assertEquals(0, compressed[2]);
+        assertEquals(7 - Lzss.MIN_MATCH, compressed[3]);
+    }
+
+    /**
+     * Data survives compression, firmware like data gets smaller
+     */
+    @Test
+    public void testRoundTrip() {
+        System.out.println("roundTrip");
+        Random random = new Random(42);
+        // code like: repeating instruction patterns with varying operands, and erased flash
+        byte[] data = new byte[20000];
+        for (int i = 0; i < 16000; i++) {
+            data[i] = (byte) ((i % 4 == 0) ? random.nextInt(16) : (i % 4) * 0x11);
+        }
+        Arrays.fill(data, 16000, data.length, (byte) 0xFF);
+        byte[] compressed = Lzss.compress(data);
+        assertTrue(compressed.length < data.length / 2);
+        assertArrayEquals(data, Lzss.decompress(compressed, data.length));
+
+        byte[] noise = new byte[1000];
+        random.nextBytes(noise);
+        assertArrayEquals(noise, Lzss.decompress(Lzss.compress(noise), noise.length));
+        assertEquals(0, Lzss.decompress(Lzss.compress(new byte[0]), 0).length);
+    }
+
+    /**
+     * Corrupt data is detected
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void testTruncated() {
+        System.out.println("truncated");
+        byte[] compressed = Lzss.compress("abcabcabcabc".getBytes());
+        Lzss.decompress(Arrays.copyOf(compressed, compressed.length - 1), 12);
+    }
+
+}
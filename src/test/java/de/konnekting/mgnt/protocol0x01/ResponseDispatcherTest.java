@@ -0,0 +1,256 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package de.konnekting.mgnt.protocol0x01;
+
+import de.root1.slicknx.KnxException;
+import java.util.List;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author achristian
+ */
+public class ResponseDispatcherTest {
+
+    static byte[] ack(boolean acknowledged) {
+        byte[] data = new byte[14];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) 0xFF;
+        }
+        data[0] = ProgProtocol0x01.PROTOCOL_VERSION;
+        data[1] = ProgProtocol0x01.MSGTYPE_ACK;
+        data[2] = acknowledged ? MsgAck.ACK : (byte) 0xFF;
+        data[3] = 0x00;
+        return data;
+    }
+
+    static byte[] memoryResponse(int address) {
+        byte[] data = new byte[14];
+        data[0] = ProgProtocol0x01.PROTOCOL_VERSION;
+        data[1] = ProgProtocol0x01.MSGTYPE_MEMORY_RESPONSE;
+        data[2] = 1;
+        data[3] = (byte) (address >> 8);
+        data[4] = (byte) address;
+        return data;
+    }
+
+    /**
+     * Unrelated messages must not disturb a waiting request
+     */
+    @Test
+    public void testStrayMessageIsIgnored() throws Exception {
+        System.out.println("strayMessageIsIgnored");
+        ResponseDispatcher dispatcher = new ResponseDispatcher();
+        PendingResponse<MsgAck> pending = dispatcher.expect(MsgAck.class, null);
+
+        assertFalse(dispatcher.dispatch(new MsgMemoryResponse(memoryResponse(0x10)), "1.1.1"));
+        assertTrue(dispatcher.dispatch(new MsgAck(ack(true)), "1.1.1"));
+
+        List<MsgAck> result = pending.await(10);
+        assertEquals(1, result.size());
+        assertTrue(result.get(0).isAcknowledged());
+    }
+
+    /**
+     * Messages are handed to the oldest matching expectation
+     */
+    @Test
+    public void testFifoAndSourceMatching() throws Exception {
+        System.out.println("fifoAndSourceMatching");
+        ResponseDispatcher dispatcher = new ResponseDispatcher();
+        PendingResponse<MsgAck> fromOther = dispatcher.expect(MsgAck.class, "1.1.2");
+        PendingResponse<MsgAck> first = dispatcher.expect(MsgAck.class, null);
+        PendingResponse<MsgAck> second = dispatcher.expect(MsgAck.class, null);
+
+        dispatcher.dispatch(new MsgAck(ack(true)), "1.1.1");
+        assertEquals(0, fromOther.await(0).size());
+        assertEquals(1, first.await(0).size());
+        assertEquals(0, second.await(0).size());
+
+        dispatcher.remove(first);
+        dispatcher.dispatch(new MsgAck(ack(true)), "1.1.2");
+        assertEquals(1, fromOther.await(0).size());
+        assertEquals(0, second.await(0).size());
+    }
+
+    /**
+     * A NACK fails a request that waits for something else than an ack
+     */
+    @Test
+    public void testNackFailsPendingRequest() throws Exception {
+        System.out.println("nackFailsPendingRequest");
+        ResponseDispatcher dispatcher = new ResponseDispatcher();
+        PendingResponse<MsgMemoryResponse> pending = dispatcher.expect(MsgMemoryResponse.class, null);
+
+        assertTrue(dispatcher.dispatch(new MsgAck(ack(false)), "1.1.1"));
+        try {
+            pending.await(10);
+            fail("NACK not reported");
+        } catch (KnxException ex) {
+            // expected
+        }
+    }
+
+    /**
+     * Answers of another device, acks and NACKs, must not be taken by a
+     * request that waits for a certain device
+     */
+    @Test
+    public void testOtherDeviceIsIgnored() throws Exception {
+        System.out.println("otherDeviceIsIgnored");
+        ResponseDispatcher dispatcher = new ResponseDispatcher();
+        PendingResponse<MsgAck> pending = dispatcher.expect(MsgAck.class, "1.1.1");
+
+        assertFalse(dispatcher.dispatch(new MsgAck(ack(true)), "1.1.2"));
+        assertFalse(dispatcher.dispatch(new MsgAck(ack(false)), "1.1.2"));
+        assertEquals(0, pending.await(0).size());
+
+        assertTrue(dispatcher.dispatch(new MsgAck(ack(true)), "1.1.1"));
+        assertEquals(1, pending.await(0).size());
+    }
+
+    /**
+     * A repeated memory response must not be taken as answer to a request
+     * sent after the original one, but still reaches requests sent before it
+     */
+    @Test
+    public void testRepetitionIsDropped() throws Exception {
+        System.out.println("repetitionIsDropped");
+        ResponseDispatcher dispatcher = new ResponseDispatcher();
+        dispatcher.setDuplicateWindow(10000);
+        PendingResponse<MsgMemoryResponse> first = dispatcher.expect(MsgMemoryResponse.class, null);
+        first.markSent();
+        assertTrue(dispatcher.dispatch(new MsgMemoryResponse(memoryResponse(0x10)), "1.1.1"));
+
+        PendingResponse<MsgMemoryResponse> later = dispatcher.expect(MsgMemoryResponse.class, null);
+        later.markSent();
+        assertFalse(dispatcher.dispatch(new MsgMemoryResponse(memoryResponse(0x10)), "1.1.1"));
+        assertEquals(0, later.await(0).size());
+        // another address is a real answer
+        assertTrue(dispatcher.dispatch(new MsgMemoryResponse(memoryResponse(0x20)), "1.1.1"));
+        assertEquals(1, later.await(0).size());
+
+        // a request in flight before the first response may get an equal answer
+        dispatcher = new ResponseDispatcher();
+        dispatcher.setDuplicateWindow(10000);
+        first = dispatcher.expect(MsgMemoryResponse.class, null);
+        PendingResponse<MsgMemoryResponse> inFlight = dispatcher.expect(MsgMemoryResponse.class, null);
+        first.markSent();
+        inFlight.markSent();
+        assertTrue(dispatcher.dispatch(new MsgMemoryResponse(memoryResponse(0x10)), "1.1.1"));
+        assertTrue(dispatcher.dispatch(new MsgMemoryResponse(memoryResponse(0x10)), "1.1.1"));
+        assertEquals(1, inFlight.await(0).size());
+
+        // disabled
+        dispatcher.setDuplicateWindow(0);
+        later = dispatcher.expect(MsgMemoryResponse.class, null);
+        assertTrue(dispatcher.dispatch(new MsgMemoryResponse(memoryResponse(0x10)), "1.1.1"));
+        assertEquals(1, later.await(0).size());
+    }
+
+    /**
+     * Acks are all equal, so the ack of the next stop-and-wait request must
+     * never be taken for a repetition
+     */
+    @Test
+    public void testEqualAcksAreNotDropped() throws Exception {
+        System.out.println("equalAcksAreNotDropped");
+        ResponseDispatcher dispatcher = new ResponseDispatcher();
+        dispatcher.setDuplicateWindow(10000);
+        PendingResponse<MsgAck> first = dispatcher.expect(MsgAck.class, null);
+        first.markSent();
+        assertTrue(dispatcher.dispatch(new MsgAck(ack(true)), "1.1.1"));
+        dispatcher.remove(first);
+
+        PendingResponse<MsgAck> next = dispatcher.expect(MsgAck.class, null);
+        next.markSent();
+        assertTrue(dispatcher.dispatch(new MsgAck(ack(true)), "1.1.1"));
+        assertEquals(1, next.await(0).size());
+    }
+
+    /**
+     * Collecting ends after the quiet period or the expected count, and the
+     * listener gets each message
+     */
+    @Test
+    public void testEarlyCompletion() throws Exception {
+        System.out.println("earlyCompletion");
+        ResponseDispatcher dispatcher = new ResponseDispatcher();
+        PendingResponse<MsgMemoryResponse> pending = dispatcher.expect(MsgMemoryResponse.class, null, null, 2);
+        List<MsgMemoryResponse> streamed = new java.util.ArrayList<>();
+        pending.setListener(streamed::add);
+
+        long start = System.currentTimeMillis();
+        assertEquals(0, pending.await(5000, 50).size());
+        assertTrue(System.currentTimeMillis() - start < 2000);
+
+        dispatcher.dispatch(new MsgMemoryResponse(memoryResponse(0x10)), "1.1.1");
+        assertEquals(1, streamed.size());
+        dispatcher.dispatch(new MsgMemoryResponse(memoryResponse(0x20)), "1.1.2");
+        start = System.currentTimeMillis();
+        assertEquals(2, pending.await(5000, 0).size());
+        assertTrue(System.currentTimeMillis() - start < 2000);
+        assertEquals(2, streamed.size());
+    }
+
+    /**
+     * The future is completed by the receiving thread, by expiry or by a NACK
+     */
+    @Test
+    public void testFuture() throws Exception {
+        System.out.println("future");
+        ResponseDispatcher dispatcher = new ResponseDispatcher();
+        PendingResponse<MsgAck> acked = dispatcher.expect(MsgAck.class, null);
+        assertFalse(acked.future().isDone());
+        dispatcher.dispatch(new MsgAck(ack(true)), "1.1.1");
+        assertEquals(1, acked.future().getNow(null).size());
+
+        PendingResponse<MsgMemoryResponse> expired = dispatcher.expect(MsgMemoryResponse.class, null);
+        expired.expire();
+        assertTrue(expired.future().getNow(null).isEmpty());
+        dispatcher.remove(expired);
+
+        PendingResponse<MsgMemoryResponse> nacked = dispatcher.expect(MsgMemoryResponse.class, null);
+        dispatcher.dispatch(new MsgAck(ack(false)), "1.1.1");
+        assertTrue(nacked.future().isCompletedExceptionally());
+    }
+
+    /**
+     * Cancelling wakes up a blocked wait right away
+     */
+    @Test
+    public void testCancel() throws Exception {
+        System.out.println("cancel");
+        ResponseDispatcher dispatcher = new ResponseDispatcher();
+        PendingResponse<MsgAck> pending = dispatcher.expect(MsgAck.class, null);
+        CancellationToken token = new CancellationToken();
+        token.onCancel(() -> dispatcher.failAll(new CancelledException("Cancelled")));
+
+        new Thread(() -> {
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException ex) {
+            }
+            token.cancel();
+        }).start();
+
+        long start = System.nanoTime();
+        try {
+            pending.await(10000);
+            fail("not cancelled");
+        } catch (CancelledException ex) {
+            assertTrue(System.nanoTime() - start < 2000000000L);
+        }
+        assertTrue(pending.future().isCompletedExceptionally());
+        try {
+            token.throwIfCancelled();
+            fail("not cancelled");
+        } catch (CancelledException ex) {
+        }
+    }
+
+}
@@ -0,0 +1,38 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package de.konnekting.mgnt.protocol0x01;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author achristian
+ */
+public class RetryPolicyTest {
+
+
+    /**
+     * Backoff doubles with each retry and is capped
+     */
+    @Test
+    public void testBackoff() {
+        System.out.println("backoff");
+        RetryPolicy instance = new RetryPolicy(5, 100, 500);
+        assertEquals(100, instance.getBackoff(1));
+        assertEquals(200, instance.getBackoff(2));
+        assertEquals(400, instance.getBackoff(3));
+        assertEquals(500, instance.getBackoff(4));
+        assertEquals(500, instance.getBackoff(40));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalid() {
+        System.out.println("invalid");
+        new RetryPolicy(1, 500, 100);
+    }
+
+}
@@ -0,0 +1,66 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package de.konnekting.mgnt.protocol0x01;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author achristian
+ */
+public class RttEstimatorTest {
+
+    private static final byte TYPE = ProgProtocol0x01.MSGTYPE_MEMORY_WRITE;
+
+    /**
+     * Without samples, the upper bound is used
+     */
+    @Test
+    public void testUnknownUsesUpperBound() {
+        System.out.println("unknownUsesUpperBound");
+        RttEstimator instance = new RttEstimator();
+        assertEquals(3000, instance.getTimeout(TYPE, "1.1.1", 3000));
+        assertEquals(-1d, instance.getSmoothedRtt(TYPE, "1.1.1"), 0d);
+    }
+
+    /**
+     * Stable round trips lead to a short timeout, limited by MIN_TIMEOUT and
+     * the upper bound
+     */
+    @Test
+    public void testTimeoutFollowsSamples() {
+        System.out.println("timeoutFollowsSamples");
+        RttEstimator instance = new RttEstimator();
+        for (int i = 0; i < 50; i++) {
+            instance.addSample(TYPE, "1.1.1", 80);
+        }
+        assertEquals(80d, instance.getSmoothedRtt(TYPE, "1.1.1"), 0.5d);
+        assertEquals(RttEstimator.MIN_TIMEOUT, instance.getTimeout(TYPE, "1.1.1", 3000));
+
+        // other device is not affected
+        assertEquals(3000, instance.getTimeout(TYPE, "1.1.2", 3000));
+
+        instance.addSample(TYPE, "1.1.3", 2000);
+        assertEquals(3000, instance.getTimeout(TYPE, "1.1.3", 3000));
+    }
+
+    /**
+     * Backoff doubles the timeout until the next sample arrives
+     */
+    @Test
+    public void testBackoff() {
+        System.out.println("backoff");
+        RttEstimator instance = new RttEstimator();
+        instance.addSample(TYPE, "1.1.1", 100); // srtt=100, rttvar=50 -> 300ms
+        assertEquals(300, instance.getTimeout(TYPE, "1.1.1", 3000));
+        instance.backoff(TYPE, "1.1.1");
+        assertEquals(600, instance.getTimeout(TYPE, "1.1.1", 3000));
+        instance.addSample(TYPE, "1.1.1", 100);
+        assertTrue(instance.getTimeout(TYPE, "1.1.1", 3000) < 600);
+    }
+
+}
@@ -0,0 +1,84 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package de.konnekting.suite.utils;
+
+import de.konnekting.deviceconfig.utils.ByteArrayDiff;
+import de.konnekting.deviceconfig.utils.WritePlanner;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author achristian
+ */
+public class WritePlannerTest {
+
+    /**
+     * Close blocks are merged into one message
+     */
+    @Test
+    public void testMergeBlocks() {
+        System.out.println("mergeBlocks");
+        byte[] oldData = new byte[20];
+        byte[] newData = new byte[20];
+        newData[0] = 1;
+        newData[2] = 1;
+        newData[8] = 1;
+
+        assertEquals(3, WritePlanner.naive(oldData, newData, 9).getTelegramCount());
+
+        WritePlanner.WritePlan plan = WritePlanner.plan(oldData, newData, 9);
+        assertEquals(1, plan.getTelegramCount());
+        ByteArrayDiff.DataBlock block = plan.getBlocks().get(0);
+        assertEquals(0, block.getIndex());
+        assertEquals(9, block.getData().length);
+    }
+
+    /**
+     * Long runs are packed into full messages, trailing unchanged bytes are
+     * not written
+     */
+    @Test
+    public void testPacking() {
+        System.out.println("packing");
+        byte[] oldData = new byte[30];
+        byte[] newData = new byte[30];
+        for (int i = 3; i < 13; i++) {
+            newData[i] = 1;
+        }
+        newData[14] = 1;
+
+        assertEquals(3, WritePlanner.naive(oldData, newData, 9).getTelegramCount());
+        WritePlanner.WritePlan plan = WritePlanner.plan(oldData, newData, 9);
+        assertEquals(2, plan.getTelegramCount());
+        assertEquals(3, plan.getBlocks().get(0).getIndex());
+        assertEquals(12, plan.getBlocks().get(1).getIndex());
+        assertEquals(3, plan.getBlocks().get(1).getData().length);
+        assertEquals(12, plan.getByteCount());
+    }
+
+    /**
+     * Writes do not cross page boundaries
+     */
+    @Test
+    public void testPageAlignment() {
+        System.out.println("pageAlignment");
+        byte[] oldData = new byte[16];
+        byte[] newData = new byte[16];
+        newData[1] = 1;
+        newData[2] = 1;
+
+        // base address 0x1E, page size 4: index 2 is start of page 0x20
+        WritePlanner.WritePlan plan = WritePlanner.plan(oldData, newData, 9, 0x1E, 4);
+        assertEquals(2, plan.getTelegramCount());
+        assertEquals(1, plan.getBlocks().get(0).getIndex());
+        assertEquals(1, plan.getBlocks().get(0).getData().length);
+        assertEquals(2, plan.getBlocks().get(1).getIndex());
+
+        assertEquals(1, WritePlanner.plan(oldData, newData, 9, 0x20, 4).getTelegramCount());
+    }
+
+}